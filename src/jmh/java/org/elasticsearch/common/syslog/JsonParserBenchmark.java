@@ -0,0 +1,66 @@
+package org.elasticsearch.common.syslog;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+
+/**
+ * Compares the inner JSON parser with the tree and streaming JSON payload modes of the message parser.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class JsonParserBenchmark {
+
+    private final static String JSON =
+            "{\"user\":\"lonvick\",\"tty\":\"/dev/pts/8\",\"attempts\":3,\"ok\":false,\"tags\":[\"auth\",\"su\"]," +
+                    "\"origin\":{\"ip\":\"192.0.2.1\",\"port\":22},\"ratio\":0.75,\"note\":\"escaped \\\"quote\\\"\"}";
+
+    private final static String MESSAGE = "<13>Oct 11 22:14:15 mymachine @cee:" + JSON;
+
+    private MessageParser treeParser;
+
+    private MessageParser streamingParser;
+
+    @Setup
+    public void setup() {
+        treeParser = new MessageParser().setJsonStreaming(false);
+        streamingParser = new MessageParser().setJsonStreaming(true);
+    }
+
+    @Benchmark
+    public Object jsonParser() throws IOException {
+        return treeParser.new JsonParser(new StringReader(JSON)).parse();
+    }
+
+    @Benchmark
+    public XContentBuilder tree() throws IOException {
+        XContentBuilder builder = jsonBuilder().startObject();
+        treeParser.parseMessage(MESSAGE, builder);
+        return builder.endObject();
+    }
+
+    @Benchmark
+    public XContentBuilder streaming() throws IOException {
+        XContentBuilder builder = jsonBuilder().startObject();
+        streamingParser.parseMessage(MESSAGE, builder);
+        return builder.endObject();
+    }
+}
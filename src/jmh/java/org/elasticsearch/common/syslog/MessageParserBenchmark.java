@@ -0,0 +1,93 @@
+package org.elasticsearch.common.syslog;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+
+/**
+ * Measures the message parser on the message formats we receive.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MessageParserBenchmark {
+
+    private final static String RFC3164 =
+            "<34>Oct 11 22:14:15 mymachine su: 'su root' failed for lonvick on /dev/pts/8";
+
+    private final static String RFC5424 =
+            "<165>1 2003-08-24T05:14:15.000003-07:00 192.0.2.1 myproc 8710 - - %% It's time to make the do-nuts.";
+
+    private final static String CEE =
+            "<13>Oct 11 22:14:15 mymachine @cee:{\"user\":\"lonvick\",\"tty\":\"/dev/pts/8\",\"attempts\":3," +
+                    "\"ok\":false,\"tags\":[\"auth\",\"su\"],\"origin\":{\"ip\":\"192.0.2.1\",\"port\":22}}";
+
+    private final static String PATTERNS =
+            "<11>Oct 11 22:14:15 mymachine php[32105]: PHP Notice:  Undefined variable: x in /var/www/index.php on line 42";
+
+    @Param({"rfc3164", "rfc5424", "cee", "patterns"})
+    public String format;
+
+    private MessageParser parser;
+
+    private ChannelBuffer buffer;
+
+    @Setup
+    public void setup() {
+        Map<String, Pattern> patterns = new LinkedHashMap<>();
+        if ("patterns".equals(format)) {
+            patterns.put("criticality", Pattern.compile("PHP (.*?):"));
+            patterns.put("file", Pattern.compile("in (.*?) on line"));
+            patterns.put("line", Pattern.compile("on line (.*)$"));
+            patterns.put("variable", Pattern.compile("variable: (\\w+)"));
+            patterns.put("pid", Pattern.compile("\\[(\\d+)\\]"));
+        }
+        parser = new MessageParser().setPatterns(patterns);
+        String message;
+        switch (format) {
+            case "rfc3164":
+                message = RFC3164;
+                break;
+            case "rfc5424":
+                message = RFC5424;
+                break;
+            case "cee":
+                message = CEE;
+                break;
+            default:
+                message = PATTERNS;
+                break;
+        }
+        buffer = ChannelBuffers.wrappedBuffer(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public XContentBuilder parseBytes() throws IOException {
+        XContentBuilder builder = jsonBuilder().startObject();
+        parser.parseMessage(buffer.duplicate(), builder);
+        return builder.endObject();
+    }
+}
@@ -0,0 +1,82 @@
+package org.elasticsearch.common.syslog;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+
+/**
+ * Compares sequential matching of all patterns with the pattern extractor.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PatternExtractorBenchmark {
+
+    private final static String MESSAGE =
+            "php[32105]: PHP Notice:  Undefined variable: x in /var/www/index.php on line 42";
+
+    @Param({"5", "40"})
+    public int count;
+
+    private Map<String, Pattern> patterns;
+
+    private PatternExtractor extractor;
+
+    @Setup
+    public void setup() {
+        patterns = new LinkedHashMap<>();
+        patterns.put("criticality", Pattern.compile("PHP (.*?):"));
+        patterns.put("file", Pattern.compile("in (.*?) on line"));
+        patterns.put("line", Pattern.compile("on line (.*)$"));
+        patterns.put("variable", Pattern.compile("variable: (\\w+)"));
+        patterns.put("pid", Pattern.compile("\\[(\\d+)\\]"));
+        for (int i = patterns.size(); i < count; i++) {
+            patterns.put("field" + i, Pattern.compile("event" + i + " id=(\\d+) user=(\\S+)"));
+        }
+        PatternExtractor.Builder builder = PatternExtractor.builder();
+        for (Map.Entry<String, Pattern> entry : patterns.entrySet()) {
+            builder.add(entry.getKey(), entry.getValue());
+        }
+        extractor = builder.build();
+    }
+
+    @Benchmark
+    public XContentBuilder sequential() throws IOException {
+        XContentBuilder builder = jsonBuilder().startObject();
+        for (Map.Entry<String, Pattern> entry : patterns.entrySet()) {
+            Matcher m = entry.getValue().matcher(MESSAGE);
+            if (m.find()) {
+                builder.field(entry.getKey(), m.group(1));
+            }
+        }
+        return builder.endObject();
+    }
+
+    @Benchmark
+    public XContentBuilder extractor() throws IOException {
+        XContentBuilder builder = jsonBuilder().startObject();
+        extractor.extract(MESSAGE, Facility.USER.numericalCode(), builder, null);
+        return builder.endObject();
+    }
+}
@@ -0,0 +1,107 @@
+package org.elasticsearch.common.syslog;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the document source in the formats of {@code syslog.source_format}, and reading
+ * it again like the node executing the bulk request does. The {@code read} benchmark counts the bytes
+ * it reads as the secondary result {@code sourceBytes}, divided by its score this is the source size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SourceFormatBenchmark {
+
+    private final static String RFC3164 =
+            "<34>Oct 11 22:14:15 mymachine su: 'su root' failed for lonvick on /dev/pts/8";
+
+    private final static String CEE =
+            "<13>Oct 11 22:14:15 mymachine @cee:{\"user\":\"lonvick\",\"tty\":\"/dev/pts/8\",\"attempts\":3," +
+                    "\"ok\":false,\"tags\":[\"auth\",\"su\"],\"origin\":{\"ip\":\"192.0.2.1\",\"port\":22}}";
+
+    @Param({"json", "smile", "cbor"})
+    public String format;
+
+    @Param({"rfc3164", "cee"})
+    public String message;
+
+    private XContentType type;
+
+    private MessageParser parser;
+
+    private ChannelBuffer buffer;
+
+    private BytesReference source;
+
+    @Setup
+    public void setup() throws IOException {
+        type = XContentType.valueOf(format.toUpperCase(Locale.ROOT));
+        parser = new MessageParser();
+        buffer = ChannelBuffers.wrappedBuffer(("cee".equals(message) ? CEE : RFC3164).getBytes(StandardCharsets.UTF_8));
+        source = build().bytes();
+    }
+
+    @Benchmark
+    public XContentBuilder build() throws IOException {
+        XContentBuilder builder = XContentFactory.contentBuilder(type).startObject()
+                .field("protocol", "tcp")
+                .field("local", "/127.0.0.1:514")
+                .field("remote", "/192.0.2.1:40000");
+        parser.parseMessage(buffer.duplicate(), builder);
+        return builder.endObject();
+    }
+
+    @Benchmark
+    public int read(SourceSize size) throws IOException {
+        size.sourceBytes += source.length();
+        int tokens = 0;
+        try (XContentParser parser = XContentFactory.xContent(source).createParser(source)) {
+            while (parser.nextToken() != null) {
+                tokens++;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * The bytes of the sources read, reported with the results.
+     */
+    @State(Scope.Thread)
+    @AuxCounters
+    public static class SourceSize {
+
+        public long sourceBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            sourceBytes = 0L;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.elasticsearch.common.syslog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the timestamp parsing and printing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TimestampBenchmark {
+
+    private final static String RFC5424 = "2003-08-24T05:14:15.000003-07:00";
+
+    private final static String RFC5424_UTC = "2003-10-11T22:14:15.003Z";
+
+    private TimestampParser parser;
+
+    private final char[] chars = new char[TimestampParser.PRINT_LEN];
+
+    private String[] seconds;
+
+    private int n;
+
+    @Setup
+    public void setup() {
+        parser = new TimestampParser();
+        seconds = new String[3600];
+        for (int i = 0; i < seconds.length; i++) {
+            seconds[i] = String.format("Oct 11 22:%02d:%02d", i / 60, i % 60);
+        }
+    }
+
+    @Benchmark
+    public long rfc3164() {
+        return parser.parseRFC3164("Oct 11 22:14:15", 0);
+    }
+
+    @Benchmark
+    public long rfc3164Changing() {
+        // a new second for each call, as in a steady stream of messages
+        return parser.parseRFC3164(seconds[n++ % seconds.length], 0);
+    }
+
+    @Benchmark
+    public long rfc5424() {
+        return parser.parseRFC5424(RFC5424, 0, RFC5424.length());
+    }
+
+    @Benchmark
+    public long rfc5424Utc() {
+        return parser.parseRFC5424(RFC5424_UTC, 0, RFC5424_UTC.length());
+    }
+
+    @Benchmark
+    public char[] print() {
+        TimestampParser.print(1066054455003L, chars);
+        return chars;
+    }
+}
@@ -0,0 +1,85 @@
+package org.elasticsearch.syslog;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the TCP path from the frame decoder and the handler through the workers and the
+ * bulk processor into a client which does not execute the bulk requests.
+ * The worker queues are bounded and the handler waits when they are full, so the throughput
+ * in steady state is the throughput of the whole path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class HandlerBenchmark {
+
+    private final static String MESSAGE =
+            "<34>Oct 11 22:14:15 mymachine su: 'su root' failed for lonvick on /dev/pts/8\n";
+
+    @Param({"json", "smile", "cbor"})
+    public String sourceFormat;
+
+    private ThreadPool threadPool;
+
+    private NoopBulkClient client;
+
+    private SyslogService service;
+
+    private DecoderEmbedder<Object> embedder;
+
+    private ChannelBuffer message;
+
+    @Setup
+    public void setup() {
+        Settings settings = Settings.settingsBuilder()
+                .put("syslog.host", "127.0.0.1")
+                .put("syslog.port", "0")
+                .put("syslog.source_format", sourceFormat)
+                .put("index", "syslog")
+                .build();
+        threadPool = new ThreadPool(Settings.settingsBuilder()
+                .put("name", "benchmark")
+                .put(SyslogThreadPool.settings(settings))
+                .build());
+        client = new NoopBulkClient(settings, threadPool);
+        service = new SyslogService(settings, client, threadPool, null, null);
+        service.start();
+        embedder = new DecoderEmbedder<>(new SyslogFrameDecoder(64 * 1024), service.new Handler(service.listeners().get(0), "tcp"));
+        message = ChannelBuffers.wrappedBuffer(MESSAGE.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown
+    public void tearDown() {
+        embedder.finish();
+        service.stop();
+        service.close();
+        ThreadPool.terminate(threadPool, 10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public boolean messageReceived() {
+        return embedder.offer(message.duplicate());
+    }
+}
@@ -0,0 +1,49 @@
+package org.elasticsearch.syslog;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.support.AbstractClient;
+import org.elasticsearch.client.support.Headers;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A client which acknowledges bulk requests without executing them.
+ */
+public class NoopBulkClient extends AbstractClient {
+
+    private final AtomicLong actions = new AtomicLong();
+
+    public NoopBulkClient(Settings settings, ThreadPool threadPool) {
+        super(settings, threadPool, Headers.EMPTY);
+    }
+
+    public long getActions() {
+        return actions.get();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected <Request extends ActionRequest, Response extends ActionResponse,
+            RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>>
+    void doExecute(Action<Request, Response, RequestBuilder> action, Request request, ActionListener<Response> listener) {
+        if (request instanceof BulkRequest) {
+            actions.addAndGet(((BulkRequest) request).numberOfActions());
+            listener.onResponse((Response) new BulkResponse(new BulkItemResponse[0], 0L));
+        } else {
+            listener.onFailure(new UnsupportedOperationException(action.name()));
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -1,46 +1,66 @@
 package org.elasticsearch.common.syslog;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
 import org.elasticsearch.common.joda.Joda;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
 import org.elasticsearch.common.xcontent.XContentBuilder;
-import org.joda.time.DateTime;
-import org.joda.time.format.DateTimeFormat;
+import org.elasticsearch.common.xcontent.XContentGenerator;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentString;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.joda.time.format.DateTimeFormatter;
 
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * Parses a syslog message with RFC 3164 or RFC 5424 date format
+ * Parses a syslog message with RFC 3164 or RFC 5424 date format, either from a string
+ * or directly from the bytes of a channel buffer
  */
 public class MessageParser {
 
-    private final static Pattern TWO_SPACES = Pattern.compile("  ");
+    private final static ESLogger logger = ESLoggerFactory.getLogger(MessageParser.class.getName());
 
     private final static DateTimeFormatter formatter =
             Joda.forPattern("dateOptionalTime", Locale.ROOT).printer();
 
-    private final static DateTimeFormatter rfc3164Format =
-            DateTimeFormat.forPattern("MMM d HH:mm:ss").withZoneUTC();
+    private final static int RFC3164_LEN = TimestampParser.RFC3164_LEN;
 
-    private final static int RFC3164_LEN = 15;
+    private final static int MAX_TAG_LEN = 64;
 
-    private final static int RFC5424_PREFIX_LEN = 19;
+    private final static ThreadLocal<char[]> timestampChars = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[TimestampParser.PRINT_LEN];
+        }
+    };
+
+    /**
+     * The facility and severity labels of the 192 priority values.
+     */
+    private final static String[] FACILITY_LABELS = new String[192];
 
-    private final DateTimeFormatter timeParser;
+    private final static String[] SEVERITY_LABELS = new String[192];
+
+    static {
+        for (int pri = 0; pri < 192; pri++) {
+            FACILITY_LABELS[pri] = Facility.fromNumericalCode(pri / 8).label();
+            SEVERITY_LABELS[pri] = Severity.fromNumericalCode(pri % 8).label();
+        }
+    }
 
-    private Cache<String, Long> timestampCache;
+    private final TimestampParser timestampParser = new TimestampParser();
 
     private Map<String, String> fieldNames = new HashMap<String, String>() {{
         put("host", "host");
@@ -48,191 +68,555 @@ public class MessageParser {
         put("severity", "severity");
         put("timestamp", "timestamp");
         put("message", "message");
+        put("program", "program");
+        put("pid", "pid");
+        put("msgid", "msgid");
+        put("structured_data", "structured_data");
     }};
 
-    private Map<String, Pattern> patterns;
+    /**
+     * The field names, serialized once when they are set and not for every message.
+     */
+    private XContentString hostField = new XContentString("host");
 
-    public MessageParser() {
-        timeParser = DateTimeFormat.forPattern("yyyy-MM-dd'T'HH:mm:ss").withZoneUTC();
-        timestampCache = CacheBuilder.newBuilder().maximumSize(1000).build(
-                new CacheLoader<String, Long>() {
+    private XContentString facilityField = new XContentString("facility");
 
-                    @Override
-                    public Long load(String key) throws Exception {
-                        return timeParser.parseMillis(key);
-                    }
-                });
-    }
+    private XContentString severityField = new XContentString("severity");
+
+    private XContentString timestampField = new XContentString("timestamp");
+
+    private XContentString messageField = new XContentString("message");
+
+    private XContentString programField = new XContentString("program");
+
+    private XContentString pidField = new XContentString("pid");
+
+    private XContentString msgIdField = new XContentString("msgid");
+
+    private XContentString structuredDataField = new XContentString("structured_data");
+
+    private PatternExtractor patternExtractor;
+
+    private boolean jsonStreaming = true;
 
     public MessageParser setPatterns(Map<String, Pattern> patterns) {
-        this.patterns = patterns;
+        PatternExtractor.Builder builder = PatternExtractor.builder();
+        if (patterns != null) {
+            for (Map.Entry<String, Pattern> entry : patterns.entrySet()) {
+                builder.add(entry.getKey(), entry.getValue());
+            }
+        }
+        return setPatternExtractor(builder.build());
+    }
+
+    public MessageParser setPatternExtractor(PatternExtractor patternExtractor) {
+        this.patternExtractor = patternExtractor != null && patternExtractor.size() > 0 ? patternExtractor : null;
+        return this;
+    }
+
+    /**
+     * Select how JSON payloads are added to the document. In streaming mode, the JSON tokens
+     * are copied into the builder, otherwise a map is built from the payload first.
+     *
+     * @param jsonStreaming true for streaming mode (the default)
+     * @return this parser
+     */
+    public MessageParser setJsonStreaming(boolean jsonStreaming) {
+        this.jsonStreaming = jsonStreaming;
         return this;
     }
 
     public MessageParser setFieldName(String name, String newName) {
         fieldNames.put(name, newName);
+        hostField = new XContentString(fieldNames.get("host"));
+        facilityField = new XContentString(fieldNames.get("facility"));
+        severityField = new XContentString(fieldNames.get("severity"));
+        timestampField = new XContentString(fieldNames.get("timestamp"));
+        messageField = new XContentString(fieldNames.get("message"));
+        programField = new XContentString(fieldNames.get("program"));
+        pidField = new XContentString(fieldNames.get("pid"));
+        msgIdField = new XContentString(fieldNames.get("msgid"));
+        structuredDataField = new XContentString(fieldNames.get("structured_data"));
         return this;
     }
 
-    @SuppressWarnings("unchecked")
     public void parseMessage(String msg, XContentBuilder builder) throws IOException {
-        int msgLen = msg.length();
-        int pos = 0;
-        if (msg.charAt(pos) != '<') {
-            throw new IllegalArgumentException("bad format: invalid priority: cannot find open bracket '<' " + msg);
-        }
-        int end = msg.indexOf('>');
-        if (end < 0 || end > 6) {
-            throw new IllegalArgumentException("bad format: invalid priority: cannot find end bracket '>' " + msg);
-        }
-        int pri = Integer.parseInt(msg.substring(1, end));
-        Facility facility = Facility.fromNumericalCode(pri / 8);
-        Severity severity = Severity.fromNumericalCode(pri % 8);
-        builder.field(fieldNames.get("facility"), facility.label())
-                .field(fieldNames.get("severity"), severity.label());
-        if (msgLen <= end + 1) {
-            throw new IllegalArgumentException("bad format: no data except priority " + msg);
+        parseMessage(msg, builder, null);
+    }
+
+    public void parseMessage(String msg, XContentBuilder builder, Listener listener) throws IOException {
+        // encoded once, the byte parser decodes only the fields it writes
+        byte[] bytes = msg.getBytes(StandardCharsets.UTF_8);
+        parseMessage(bytes, 0, bytes.length, builder, listener);
+    }
+
+    /**
+     * Parses a syslog message from the readable bytes of a channel buffer without decoding
+     * the whole buffer into a string. Priority, timestamp and host name are scanned on byte level
+     * and written from byte ranges, only the message body is decoded from UTF-8.
+     *
+     * @param buffer the channel buffer
+     * @param builder the builder for the parsed fields
+     * @param listener notified about JSON payloads and pattern matches, may be null
+     * @throws IOException if fields can not be written
+     */
+    public void parseMessage(ChannelBuffer buffer, XContentBuilder builder, Listener listener) throws IOException {
+        int length = buffer.readableBytes();
+        if (buffer.hasArray()) {
+            parseMessage(buffer.array(), buffer.arrayOffset() + buffer.readerIndex(), length, builder, listener);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.getBytes(buffer.readerIndex(), bytes);
+            parseMessage(bytes, 0, length, builder, listener);
+        }
+    }
+
+    public void parseMessage(ChannelBuffer buffer, XContentBuilder builder) throws IOException {
+        parseMessage(buffer, builder, null);
+    }
+
+    /**
+     * Decodes only the priority at the start of a buffer, without consuming any bytes.
+     *
+     * @param buffer the channel buffer
+     * @return the priority value, or -1 if the buffer does not start with a valid priority
+     */
+    public static int parsePriority(ChannelBuffer buffer) {
+        int start = buffer.readerIndex();
+        int limit = Math.min(buffer.writerIndex(), start + 5);
+        if (start == limit || buffer.getByte(start) != '<') {
+            return -1;
+        }
+        int pri = 0;
+        for (int i = start + 1; i < limit; i++) {
+            byte b = buffer.getByte(i);
+            if (b == '>') {
+                return i > start + 1 && pri < 192 ? pri : -1;
+            }
+            if (b < '0' || b > '9') {
+                return -1;
+            }
+            pri = pri * 10 + (b - '0');
+        }
+        return -1;
+    }
+
+    public void parseMessage(byte[] bytes, int offset, int length, XContentBuilder builder, Listener listener) throws IOException {
+        int limit = offset + length;
+        int pos = offset;
+        if (length == 0 || bytes[pos] != '<') {
+            throw new IllegalArgumentException("bad format: invalid priority: cannot find open bracket '<' " + utf8(bytes, offset, limit));
+        }
+        int pri = 0;
+        int end = pos + 1;
+        while (end < limit && bytes[end] != '>') {
+            byte b = bytes[end];
+            if (b < '0' || b > '9' || end - offset > 5) {
+                throw new IllegalArgumentException("bad format: invalid priority: cannot find end bracket '>' " + utf8(bytes, offset, limit));
+            }
+            pri = pri * 10 + (b - '0');
+            end++;
+        }
+        if (end == limit || end == pos + 1) {
+            throw new IllegalArgumentException("bad format: invalid priority: cannot find end bracket '>' " + utf8(bytes, offset, limit));
+        }
+        priorityFields(builder, pri);
+        if (limit <= end + 1) {
+            throw new IllegalArgumentException("bad format: no data except priority " + utf8(bytes, offset, limit));
         }
         pos = end + 1;
-        if (msgLen > pos + 2 && "1 ".equals(msg.substring(pos, pos + 2))) {
+        boolean rfc5424 = false;
+        if (limit > pos + 2 && bytes[pos] == '1' && bytes[pos + 1] == ' ') {
+            rfc5424 = true;
             pos += 2;
         }
         long timestamp;
-        char ch = msg.charAt(pos);
-        if (ch == '-') {
+        byte b = bytes[pos];
+        if (b == '-') {
             timestamp = System.currentTimeMillis();
-            if (msgLen <= pos + 2) {
+            if (limit <= pos + 2) {
                 throw new IllegalArgumentException("bad syslog format (missing hostname)");
             }
             pos += 2;
-        } else if (ch >= 'A' && ch <= 'Z') {
-            if (msgLen <= pos + RFC3164_LEN) {
+        } else if (b >= 'A' && b <= 'Z') {
+            if (limit <= pos + RFC3164_LEN) {
                 throw new IllegalArgumentException("bad timestamp format");
             }
-            timestamp = parseRFC3164Time(msg.substring(pos, pos + RFC3164_LEN));
+            timestamp = timestampParser.parseRFC3164(bytes, pos);
             pos += RFC3164_LEN + 1;
         } else {
-            int sp = msg.indexOf(' ', pos);
+            int sp = indexOf(bytes, ' ', pos, limit);
             if (sp == -1) {
                 throw new IllegalArgumentException("bad timestamp format");
             }
-            timestamp = parseRFC5424Date(msg.substring(pos, sp));
+            timestamp = timestampParser.parseRFC5424(bytes, pos, sp);
             pos = sp + 1;
         }
-        builder.field(fieldNames.get("timestamp"), formatter.print(timestamp));
-        int ns = msg.indexOf(' ', pos);
+        timestampField(builder, timestamp);
+        int ns = indexOf(bytes, ' ', pos, limit);
         if (ns == -1) {
             throw new IllegalArgumentException("bad syslog format (missing hostname)");
         }
-        String hostname = msg.substring(pos, ns);
-        builder.field(fieldNames.get("host"), hostname);
-
-        String data;
-        if (msgLen > ns + 1) {
-            pos = ns + 1;
-            data = msg.substring(pos);
+        if (rfc5424 && ns - pos == 1 && bytes[pos] == '-') {
+            // the NILVALUE, no host name
+        } else if (builder.contentType() == XContentType.CBOR) {
+            // the CBOR generator ignores the offset of UTF-8 bytes
+            builder.generator().writeStringField(hostField, utf8(bytes, pos, ns));
+        } else {
+            builder.generator().writeFieldName(hostField);
+            builder.generator().writeUTF8String(bytes, pos, ns - pos);
+        }
+        if (limit > ns + 1) {
+            parseBody(bytes, ns + 1, limit, rfc5424, pri, builder, listener);
         } else {
-            data = msg;
+            parseBody(bytes, offset, limit, false, pri, builder, listener);
         }
-        try {
-            if (data.startsWith("@cee:")) {
-                data = data.substring(5);
+    }
+
+    /**
+     * Parses what follows the host name. For RFC 5424, these are APP-NAME, PROCID, MSGID and
+     * STRUCTURED-DATA, followed by the message. For RFC 3164, a leading TAG with an optional PID is
+     * detected, and the message is the whole content including the TAG. If the RFC 5424 header is
+     * incomplete or the structured data is malformed, the whole rest is the message.
+     */
+    @SuppressWarnings("unchecked")
+    private void parseBody(byte[] bytes, int from, int limit, boolean rfc5424, int pri, XContentBuilder builder,
+                           Listener listener) throws IOException {
+        int dataStart = from;
+        String program = null;
+        if (rfc5424) {
+            int appEnd = indexOf(bytes, ' ', from, limit);
+            int procEnd = appEnd < 0 ? -1 : indexOf(bytes, ' ', appEnd + 1, limit);
+            int msgIdEnd = procEnd < 0 ? -1 : indexOf(bytes, ' ', procEnd + 1, limit);
+            // validate the structured data first, so malformed data never leaves partial fields
+            int sdEnd = msgIdEnd < 0 ? -1 : structuredData(bytes, msgIdEnd + 1, limit, null);
+            if (sdEnd >= 0) {
+                program = headerField(builder, programField, bytes, from, appEnd);
+                headerField(builder, pidField, bytes, appEnd + 1, procEnd);
+                headerField(builder, msgIdField, bytes, procEnd + 1, msgIdEnd);
+                structuredData(bytes, msgIdEnd + 1, limit, builder);
+                dataStart = sdEnd < limit ? sdEnd + 1 : limit;
+                if (limit - dataStart >= 3 && bytes[dataStart] == (byte) 0xef && bytes[dataStart + 1] == (byte) 0xbb
+                        && bytes[dataStart + 2] == (byte) 0xbf) {
+                    // the byte order mark of a UTF-8 message
+                    dataStart += 3;
+                }
             }
-            JsonParser parser = new JsonParser(new StringReader(data));
-            Map<String,Object> map = (Map<String,Object>)parser.parse();
-            builder.map(map);
-        } catch (Throwable t) {
-            // ignore
+        } else {
+            program = tag(bytes, from, limit, builder);
         }
-        String message = fieldNames.get("message");
-        builder.field(message, data);
-        if (patterns != null) {
-            for (Map.Entry<String, Pattern> entry : patterns.entrySet()) {
-                Matcher m = entry.getValue().matcher(data);
-                if (m.find()) {
-                    builder.field(entry.getKey(), m.group(1));
+        if (limit - dataStart >= 5 && bytes[dataStart] == '@' && bytes[dataStart + 1] == 'c'
+                && bytes[dataStart + 2] == 'e' && bytes[dataStart + 3] == 'e' && bytes[dataStart + 4] == ':') {
+            dataStart += 5;
+        }
+        String data = utf8(bytes, dataStart, limit);
+        if (isJsonObject(bytes, dataStart, limit)) {
+            if (jsonStreaming) {
+                if (streamJson(bytes, dataStart, limit, builder) && listener != null) {
+                    listener.jsonPayload();
+                }
+            } else {
+                try {
+                    JsonParser parser = new JsonParser(new StringReader(data));
+                    Map<String,Object> map = (Map<String,Object>)parser.parse();
+                    for (Map.Entry<String,Object> entry : map.entrySet()) {
+                        builder.field(entry.getKey(), entry.getValue());
+                    }
+                    if (listener != null) {
+                        listener.jsonPayload();
+                    }
+                } catch (Throwable t) {
+                    // ignore
                 }
             }
         }
+        builder.generator().writeStringField(messageField, data);
+        if (patternExtractor != null) {
+            patternExtractor.extract(data, pri / 8, program, builder, listener);
+        }
     }
 
-    private Long parseRFC5424Date(String msg) {
-        int len = msg.length();
-        if (len <= RFC5424_PREFIX_LEN) {
-            throw new IllegalArgumentException("bad format: not a valid RFC5424 timestamp: " + msg);
-        }
-        String timestampPrefix = msg.substring(0, RFC5424_PREFIX_LEN);
-        Long timestamp = timestampCache.getIfPresent(timestampPrefix);
-        int pos = RFC5424_PREFIX_LEN;
-        if (timestamp == null) {
-            throw new IllegalArgumentException("parse error: timestamp is null");
-        }
-        if (msg.charAt(pos) == '.') {
-            boolean found = false;
-            int end = pos + 1;
-            if (len <= end) {
-                throw new IllegalArgumentException("bad timestamp format (no TZ)");
-            }
-            while (!found) {
-                char ch = msg.charAt(end);
-                if (ch >= '0' && ch <= '9') {
-                    end++;
-                } else {
-                    found = true;
+    /**
+     * Writes an RFC 5424 header field unless it is the NILVALUE.
+     *
+     * @return the value, or null for the NILVALUE
+     */
+    private static String headerField(XContentBuilder builder, XContentString field, byte[] bytes, int from, int to)
+            throws IOException {
+        if (to == from || (to - from == 1 && bytes[from] == '-')) {
+            return null;
+        }
+        String value = utf8(bytes, from, to);
+        builder.generator().writeStringField(field, value);
+        return value;
+    }
+
+    /**
+     * Scans RFC 5424 STRUCTURED-DATA, the NILVALUE or one or more SD-ELEMENTs, and writes the elements as
+     * an object of objects by SD-ID, with the unescaped PARAM-VALUEs by PARAM-NAME.
+     *
+     * @param builder the builder, or null to only validate
+     * @return the end of the structured data, at a space or the limit, or -1 if it is malformed
+     */
+    private int structuredData(byte[] bytes, int from, int limit, XContentBuilder builder) throws IOException {
+        int pos = from;
+        if (pos >= limit) {
+            return -1;
+        }
+        if (bytes[pos] == '-') {
+            pos++;
+            return pos == limit || bytes[pos] == ' ' ? pos : -1;
+        }
+        if (bytes[pos] != '[') {
+            return -1;
+        }
+        if (builder != null) {
+            builder.generator().writeFieldName(structuredDataField);
+            builder.startObject();
+        }
+        while (pos < limit && bytes[pos] == '[') {
+            int idStart = ++pos;
+            while (pos < limit && isSdName(bytes[pos])) {
+                pos++;
+            }
+            if (pos == idStart || pos == limit) {
+                return -1;
+            }
+            if (builder != null) {
+                builder.field(utf8(bytes, idStart, pos));
+                builder.startObject();
+            }
+            while (pos < limit && bytes[pos] == ' ') {
+                int nameStart = ++pos;
+                while (pos < limit && isSdName(bytes[pos])) {
+                    pos++;
                 }
+                if (pos == nameStart || pos + 1 >= limit || bytes[pos] != '=' || bytes[pos + 1] != '"') {
+                    return -1;
+                }
+                int nameEnd = pos;
+                pos += 2;
+                int valueStart = pos;
+                boolean escaped = false;
+                while (pos < limit && bytes[pos] != '"') {
+                    if (bytes[pos] == '\\' && pos + 1 < limit) {
+                        escaped = true;
+                        pos++;
+                    }
+                    pos++;
+                }
+                if (pos == limit) {
+                    return -1;
+                }
+                if (builder != null) {
+                    String value = utf8(bytes, valueStart, pos);
+                    builder.generator().writeStringField(utf8(bytes, nameStart, nameEnd), escaped ? unescape(value) : value);
+                }
+                pos++;
             }
-            if (end - (pos + 1) > 0) {
-                long milliseconds = (long) (Double.parseDouble(msg.substring(pos, end)) * 1000.0);
-                timestamp += milliseconds;
-            } else {
-                throw new IllegalArgumentException("bad format: invalid timestamp (fractional portion): " + msg);
+            if (pos == limit || bytes[pos] != ']') {
+                return -1;
+            }
+            pos++;
+            if (builder != null) {
+                builder.endObject();
             }
-            pos = end;
         }
-        char ch = msg.charAt(pos);
-        if (ch != 'Z') {
-            if (ch == '+' || ch == '-') {
-                if (len <= pos + 5) {
-                    throw new IllegalArgumentException("bad format: invalid timezone: " + msg);
-                }
-                int sign = ch == '+' ? +1 : -1;
-                char[] hourzone = new char[5];
-                for (int i = 0; i < 5; i++) {
-                    hourzone[i] = msg.charAt(pos + 1 + i);
+        if (pos < limit && bytes[pos] != ' ') {
+            return -1;
+        }
+        if (builder != null) {
+            builder.endObject();
+        }
+        return pos;
+    }
+
+    /**
+     * An SD-NAME character, printable US-ASCII except {@code =}, space, {@code ]} and {@code "}.
+     */
+    private static boolean isSdName(byte b) {
+        return b > ' ' && b < 127 && b != '=' && b != ']' && b != '"';
+    }
+
+    /**
+     * Only {@code \"}, {@code \\} and {@code \]} are escapes in a PARAM-VALUE, other backslashes are kept.
+     */
+    private static String unescape(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(i + 1);
+                if (next == '"' || next == '\\' || next == ']') {
+                    sb.append(next);
+                    i++;
+                    continue;
                 }
-                if (hourzone[0] >= '0' && hourzone[0] <= '9'
-                        && hourzone[1] >= '0' && hourzone[1] <= '9'
-                        && hourzone[2] == ':'
-                        && hourzone[3] >= '0' && hourzone[3] <= '9'
-                        && hourzone[4] >= '0' && hourzone[4] <= '9') {
-                    int hourOffset = Integer.parseInt(msg.substring(pos + 1, pos + 3));
-                    int minOffset = Integer.parseInt(msg.substring(pos + 4, pos + 6));
-                    timestamp -= sign * ((hourOffset * 60) + minOffset) * 60000;
-                } else {
-                    throw new IllegalArgumentException("bad format: invalid timezone: " + msg);
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Detects an RFC 3164 TAG like {@code su:} or {@code sshd[123]:} at the start of the content, and
+     * writes it as program and pid.
+     *
+     * @return the program, or null if the content does not start with a TAG
+     */
+    private String tag(byte[] bytes, int from, int limit, XContentBuilder builder) throws IOException {
+        int pos = from;
+        while (pos < limit && pos - from < MAX_TAG_LEN && isTagChar(bytes[pos])) {
+            pos++;
+        }
+        if (pos == from || pos == limit) {
+            return null;
+        }
+        int tagEnd = pos;
+        int pidStart = -1;
+        if (bytes[pos] == '[') {
+            pidStart = ++pos;
+            while (pos < limit && bytes[pos] >= '0' && bytes[pos] <= '9') {
+                pos++;
+            }
+            if (pos == pidStart || pos + 1 >= limit || bytes[pos] != ']') {
+                return null;
+            }
+            pos++;
+        }
+        if (bytes[pos] != ':') {
+            return null;
+        }
+        String program = utf8(bytes, from, tagEnd);
+        builder.generator().writeStringField(programField, program);
+        if (pidStart >= 0) {
+            builder.generator().writeStringField(pidField, utf8(bytes, pidStart, pos - 1));
+        }
+        return program;
+    }
+
+    private static boolean isTagChar(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+                || b == '.' || b == '_' || b == '-' || b == '/';
+    }
+
+    private static int indexOf(byte[] bytes, char ch, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            if (bytes[i] == ch) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copies the members of a JSON object payload as fields into the builder, without building
+     * an intermediate map. The payload is validated in a first pass over the tokens so that
+     * a malformed payload never leaves partial fields in the builder. Like the tree parser,
+     * numbers are written as strings.
+     *
+     * @return true if the payload was copied, false if it was not a valid JSON object
+     */
+    private boolean streamJson(byte[] bytes, int from, int limit, XContentBuilder builder) throws IOException {
+        try (XContentParser parser = JsonXContent.jsonXContent.createParser(bytes, from, limit - from)) {
+            if (!isValidJsonObject(parser)) {
+                return false;
+            }
+        } catch (IOException e) {
+            logger.trace("invalid JSON payload", e);
+            return false;
+        }
+        try (XContentParser parser = JsonXContent.jsonXContent.createParser(bytes, from, limit - from)) {
+            parser.nextToken();
+            copyMembers(parser, builder);
+        }
+        return true;
+    }
+
+    private static boolean isValidJsonObject(XContentParser parser) throws IOException {
+        if (parser.nextToken() != XContentParser.Token.START_OBJECT) {
+            return false;
+        }
+        parser.skipChildren();
+        return parser.nextToken() == null;
+    }
+
+    private static void copyMembers(XContentParser parser, XContentBuilder builder) throws IOException {
+        while (parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+            builder.field(parser.currentName());
+            parser.nextToken();
+            copyValue(parser, builder);
+        }
+    }
+
+    private static void copyValue(XContentParser parser, XContentBuilder builder) throws IOException {
+        switch (parser.currentToken()) {
+            case START_OBJECT:
+                builder.startObject();
+                copyMembers(parser, builder);
+                builder.endObject();
+                break;
+            case START_ARRAY:
+                builder.startArray();
+                while (parser.nextToken() != XContentParser.Token.END_ARRAY) {
+                    copyValue(parser, builder);
                 }
+                builder.endArray();
+                break;
+            case VALUE_STRING:
+            case VALUE_NUMBER:
+                builder.generator().writeString(parser.textCharacters(), parser.textOffset(), parser.textLength());
+                break;
+            case VALUE_BOOLEAN:
+                builder.value(parser.booleanValue());
+                break;
+            default:
+                builder.nullValue();
+                break;
+        }
+    }
+
+    private static boolean isJsonObject(byte[] bytes, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            byte b = bytes[i];
+            if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                return b == '{';
             }
         }
-        return timestamp;
+        return false;
     }
 
-    private Long parseRFC3164Time(String timestamp) {
-        DateTime now = DateTime.now();
-        int year = now.getYear();
-        timestamp = TWO_SPACES.matcher(timestamp).replaceFirst(" ");
-        DateTime date;
-        try {
-            date = rfc3164Format.parseDateTime(timestamp);
-        } catch (Exception e) {
-            return 0L;
-        }
-        DateTime fixed = date.withYear(year);
-        if (fixed.isAfter(now) && fixed.minusMonths(1).isAfter(now)) {
-            fixed = date.withYear(year - 1);
-        } else if (fixed.isBefore(now) && fixed.plusMonths(1).isBefore(now)) {
-            fixed = date.withYear(year + 1);
-        }
-        return fixed.getMillis();
+    private void priorityFields(XContentBuilder builder, int pri) throws IOException {
+        if (pri < 0 || pri >= 192) {
+            throw new IllegalArgumentException("bad format: invalid priority '" + pri + "'");
+        }
+        XContentGenerator generator = builder.generator();
+        generator.writeStringField(facilityField, FACILITY_LABELS[pri]);
+        generator.writeStringField(severityField, SEVERITY_LABELS[pri]);
+    }
+
+    private void timestampField(XContentBuilder builder, long timestamp) throws IOException {
+        char[] chars = timestampChars.get();
+        if (TimestampParser.print(timestamp, chars)) {
+            builder.generator().writeFieldName(timestampField);
+            builder.generator().writeString(chars, 0, chars.length);
+        } else {
+            builder.generator().writeStringField(timestampField, formatter.print(timestamp));
+        }
+    }
+
+    private static String utf8(byte[] bytes, int from, int to) {
+        return new String(bytes, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Notified about the content found while parsing a message.
+     */
+    public interface Listener {
+
+        void jsonPayload();
+
+        void patternMatch(String field);
     }
 
     class JsonParser {
@@ -0,0 +1,613 @@
+package org.elasticsearch.common.syslog;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentString;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts fields from a message with a set of patterns.
+ *
+ * For each pattern, the longest literal which every match must contain is derived from the regular
+ * expression. All literals are searched in one pass over the message with an Aho-Corasick automaton,
+ * and only the patterns whose literal was found, or which have no literal, are matched. Patterns may be
+ * scoped to facilities and programs, patterns out of scope are skipped. Matchers are reused per thread.
+ */
+public class PatternExtractor {
+
+    private final static int ALPHABET = 128;
+
+    private final String[] fields;
+
+    private final XContentString[] serializedFields;
+
+    private final Pattern[] patterns;
+
+    private final int[] facilities;
+
+    private final String[][] programs;
+
+    private final long[] unconditional;
+
+    private final int[][] delta;
+
+    private final int[][] outputs;
+
+    private final boolean hasPrograms;
+
+    private final ThreadLocal<State> state = new ThreadLocal<State>() {
+        @Override
+        protected State initialValue() {
+            return new State(patterns.length);
+        }
+    };
+
+    private PatternExtractor(List<Entry> entries) {
+        int n = entries.size();
+        this.fields = new String[n];
+        this.serializedFields = new XContentString[n];
+        this.patterns = new Pattern[n];
+        this.facilities = new int[n];
+        this.programs = new String[n][];
+        this.unconditional = new long[(n + 63) / 64];
+        boolean hasPrograms = false;
+        Trie trie = new Trie();
+        for (int i = 0; i < n; i++) {
+            Entry entry = entries.get(i);
+            fields[i] = entry.field;
+            serializedFields[i] = new XContentString(entry.field);
+            patterns[i] = entry.pattern;
+            facilities[i] = entry.facilities;
+            programs[i] = entry.programs;
+            hasPrograms |= entry.programs != null;
+            String literal = requiredLiteral(entry.pattern);
+            if (literal == null || literal.isEmpty()) {
+                unconditional[i >>> 6] |= 1L << i;
+            } else {
+                trie.add(literal, i);
+            }
+        }
+        this.hasPrograms = hasPrograms;
+        trie.build();
+        this.delta = trie.delta;
+        this.outputs = trie.outputs;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int size() {
+        return patterns.length;
+    }
+
+    /**
+     * Match the patterns against a message and write the first group of each match as a field.
+     *
+     * @param data the message
+     * @param facility the facility code of the message
+     * @param builder the builder for the fields
+     * @param listener notified about matches, may be null
+     * @throws IOException if a field can not be written
+     */
+    public void extract(String data, int facility, XContentBuilder builder, MessageParser.Listener listener)
+            throws IOException {
+        extract(data, facility, null, builder, listener);
+    }
+
+    /**
+     * Match the patterns against a message and write the first group of each match as a field.
+     *
+     * @param data the message
+     * @param facility the facility code of the message
+     * @param program the program of the message, or null for the leading token of the message
+     * @param builder the builder for the fields
+     * @param listener notified about matches, may be null
+     * @throws IOException if a field can not be written
+     */
+    public void extract(String data, int facility, String program, XContentBuilder builder,
+                        MessageParser.Listener listener) throws IOException {
+        State s = state.get();
+        long[] candidates = s.candidates;
+        System.arraycopy(unconditional, 0, candidates, 0, candidates.length);
+        int[][] delta = this.delta;
+        int[][] outputs = this.outputs;
+        int q = 0;
+        int len = data.length();
+        for (int i = 0; i < len; i++) {
+            char c = data.charAt(i);
+            q = c < ALPHABET ? delta[q][c] : 0;
+            int[] out = outputs[q];
+            if (out != null) {
+                for (int p : out) {
+                    candidates[p >>> 6] |= 1L << p;
+                }
+            }
+        }
+        int programEnd = hasPrograms && program == null ? programEnd(data) : 0;
+        int facilityBit = facility >= 0 && facility < 32 ? 1 << facility : 0;
+        for (int w = 0; w < candidates.length; w++) {
+            long bits = candidates[w];
+            while (bits != 0) {
+                int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if ((facilities[i] & facilityBit) == 0 || !(program != null ? inProgram(programs[i], program)
+                        : inProgram(programs[i], data, programEnd))) {
+                    continue;
+                }
+                Matcher m = s.matcher(i, patterns[i], data);
+                if (m.find()) {
+                    builder.generator().writeStringField(serializedFields[i], m.group(1));
+                    if (listener != null) {
+                        listener.patternMatch(fields[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The program is the leading token of the message, as in the RFC 3164 TAG {@code su[123]:}
+     * or the RFC 5424 APP-NAME.
+     */
+    private static int programEnd(String data) {
+        int len = data.length();
+        for (int i = 0; i < len; i++) {
+            char c = data.charAt(i);
+            if (c == '[' || c == ':' || c == ' ') {
+                return i;
+            }
+        }
+        return len;
+    }
+
+    private static boolean inProgram(String[] programs, String program) {
+        if (programs == null) {
+            return true;
+        }
+        for (String p : programs) {
+            if (p.equals(program)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean inProgram(String[] programs, String data, int programEnd) {
+        if (programs == null) {
+            return true;
+        }
+        for (String program : programs) {
+            if (program.length() == programEnd && data.regionMatches(0, program, 0, programEnd)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find the longest literal which must occur in every match of a pattern.
+     *
+     * Only the top level of the expression is examined. Groups, character classes, escapes which are not
+     * literal characters, and characters which may be absent end a literal. Case insensitive patterns,
+     * patterns with flags or with an alternation on the top level have no literal.
+     *
+     * @param pattern the pattern
+     * @return the literal, or null
+     */
+    static String requiredLiteral(Pattern pattern) {
+        String regex = pattern.pattern();
+        int flags = pattern.flags();
+        if ((flags & Pattern.LITERAL) != 0) {
+            return ascii(regex) ? regex : null;
+        }
+        if ((flags & (Pattern.CASE_INSENSITIVE | Pattern.COMMENTS | Pattern.CANON_EQ)) != 0) {
+            return null;
+        }
+        String best = null;
+        StringBuilder run = new StringBuilder();
+        int n = regex.length();
+        int i = 0;
+        while (i < n) {
+            char c = regex.charAt(i);
+            boolean literal = false;
+            switch (c) {
+                case '\\': {
+                    if (i + 1 >= n) {
+                        return null;
+                    }
+                    char e = regex.charAt(i + 1);
+                    if (e == 'Q') {
+                        int end = regex.indexOf("\\E", i + 2);
+                        String quoted = end < 0 ? regex.substring(i + 2) : regex.substring(i + 2, end);
+                        for (int j = 0; j < quoted.length(); j++) {
+                            if (quoted.charAt(j) < ALPHABET) {
+                                run.append(quoted.charAt(j));
+                            } else {
+                                best = longer(best, run);
+                            }
+                        }
+                        i = end < 0 ? n : end + 2;
+                        literal = quoted.length() > 0;
+                    } else if (Character.isLetterOrDigit(e)) {
+                        best = longer(best, run);
+                        i = skipEscape(regex, i);
+                    } else {
+                        if (e < ALPHABET) {
+                            run.append(e);
+                            literal = true;
+                        } else {
+                            best = longer(best, run);
+                        }
+                        i += 2;
+                    }
+                    break;
+                }
+                case '[':
+                    best = longer(best, run);
+                    i = skipClass(regex, i);
+                    break;
+                case '(':
+                    if (i + 2 < n && regex.charAt(i + 1) == '?' && "=!<>:".indexOf(regex.charAt(i + 2)) < 0) {
+                        // inline flags change how the rest of the expression matches
+                        return null;
+                    }
+                    best = longer(best, run);
+                    i = skipGroup(regex, i);
+                    break;
+                case '|':
+                    return null;
+                case '.':
+                case '^':
+                case '$':
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                case '}':
+                    best = longer(best, run);
+                    i++;
+                    break;
+                default:
+                    if (c < ALPHABET) {
+                        run.append(c);
+                        literal = true;
+                    } else {
+                        best = longer(best, run);
+                    }
+                    i++;
+                    break;
+            }
+            if (i < n && isQuantifier(regex, i)) {
+                if (literal && !requiresOne(regex, i)) {
+                    run.setLength(run.length() - 1);
+                }
+                best = longer(best, run);
+                i = skipQuantifier(regex, i);
+            }
+        }
+        return longer(best, run);
+    }
+
+    private static String longer(String best, StringBuilder run) {
+        String s = best;
+        if (run.length() > 0 && (best == null || run.length() > best.length())) {
+            s = run.toString();
+        }
+        run.setLength(0);
+        return s;
+    }
+
+    private static boolean ascii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) >= ALPHABET) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isQuantifier(String regex, int i) {
+        char c = regex.charAt(i);
+        return c == '*' || c == '+' || c == '?' || (c == '{' && i + 1 < regex.length() && Character.isDigit(regex.charAt(i + 1)));
+    }
+
+    private static boolean requiresOne(String regex, int i) {
+        char c = regex.charAt(i);
+        if (c == '+') {
+            return true;
+        }
+        if (c == '{') {
+            int min = 0;
+            for (int j = i + 1; j < regex.length() && Character.isDigit(regex.charAt(j)); j++) {
+                min = min * 10 + (regex.charAt(j) - '0');
+                if (min > 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static int skipQuantifier(String regex, int i) {
+        int n = regex.length();
+        if (regex.charAt(i) == '{') {
+            int end = regex.indexOf('}', i);
+            i = end < 0 ? n : end + 1;
+        } else {
+            i++;
+        }
+        if (i < n && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipEscape(String regex, int i) {
+        int n = regex.length();
+        char e = regex.charAt(i + 1);
+        i += 2;
+        switch (e) {
+            case 'x':
+                if (i < n && regex.charAt(i) == '{') {
+                    int end = regex.indexOf('}', i);
+                    return end < 0 ? n : end + 1;
+                }
+                return Math.min(n, i + 2);
+            case 'u':
+                return Math.min(n, i + 4);
+            case 'c':
+                return Math.min(n, i + 1);
+            case 'p':
+            case 'P':
+                if (i < n && regex.charAt(i) == '{') {
+                    int end = regex.indexOf('}', i);
+                    return end < 0 ? n : end + 1;
+                }
+                return Math.min(n, i + 1);
+            case 'k':
+                int end = regex.indexOf('>', i);
+                return end < 0 ? n : end + 1;
+            default:
+                // octal escapes and back references may continue with digits
+                while (i < n && Character.isDigit(regex.charAt(i))) {
+                    i++;
+                }
+                return i;
+        }
+    }
+
+    private static int skipClass(String regex, int i) {
+        int n = regex.length();
+        i++;
+        if (i < n && regex.charAt(i) == '^') {
+            i++;
+        }
+        if (i < n && regex.charAt(i) == ']') {
+            i++;
+        }
+        while (i < n) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '[') {
+                i = skipClass(regex, i);
+            } else if (c == ']') {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return n;
+    }
+
+    private static int skipGroup(String regex, int i) {
+        int n = regex.length();
+        int depth = 0;
+        while (i < n) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < n && regex.charAt(i + 1) == 'Q') {
+                    int end = regex.indexOf("\\E", i + 2);
+                    i = end < 0 ? n : end + 2;
+                } else {
+                    i += 2;
+                }
+            } else if (c == '[') {
+                i = skipClass(regex, i);
+            } else if (c == '(') {
+                depth++;
+                i++;
+            } else if (c == ')') {
+                i++;
+                if (--depth == 0) {
+                    return i;
+                }
+            } else {
+                i++;
+            }
+        }
+        return n;
+    }
+
+    private static class Entry {
+
+        final String field;
+
+        final Pattern pattern;
+
+        final int facilities;
+
+        final String[] programs;
+
+        Entry(String field, Pattern pattern, int facilities, String[] programs) {
+            this.field = field;
+            this.pattern = pattern;
+            this.facilities = facilities;
+            this.programs = programs;
+        }
+    }
+
+    /**
+     * The candidates and the matchers of a thread.
+     */
+    private static class State {
+
+        final long[] candidates;
+
+        final Matcher[] matchers;
+
+        State(int n) {
+            this.candidates = new long[(n + 63) / 64];
+            this.matchers = new Matcher[n];
+        }
+
+        Matcher matcher(int i, Pattern pattern, String data) {
+            Matcher m = matchers[i];
+            if (m == null) {
+                m = pattern.matcher(data);
+                matchers[i] = m;
+            } else {
+                m.reset(data);
+            }
+            return m;
+        }
+    }
+
+    /**
+     * Aho-Corasick automaton over ASCII, compiled into a transition table.
+     */
+    private static class Trie {
+
+        private final List<int[]> next = new ArrayList<>();
+
+        private final List<int[]> out = new ArrayList<>();
+
+        int[][] delta;
+
+        int[][] outputs;
+
+        Trie() {
+            newState();
+        }
+
+        private int newState() {
+            int[] row = new int[ALPHABET];
+            Arrays.fill(row, -1);
+            next.add(row);
+            out.add(null);
+            return next.size() - 1;
+        }
+
+        void add(String literal, int pattern) {
+            int q = 0;
+            for (int i = 0; i < literal.length(); i++) {
+                char c = literal.charAt(i);
+                if (next.get(q)[c] < 0) {
+                    int s = newState();
+                    next.get(q)[c] = s;
+                }
+                q = next.get(q)[c];
+            }
+            out.set(q, append(out.get(q), pattern));
+        }
+
+        void build() {
+            int n = next.size();
+            int[] fail = new int[n];
+            Deque<Integer> queue = new ArrayDeque<>();
+            int[] root = next.get(0);
+            for (int c = 0; c < ALPHABET; c++) {
+                if (root[c] < 0) {
+                    root[c] = 0;
+                } else {
+                    fail[root[c]] = 0;
+                    queue.add(root[c]);
+                }
+            }
+            while (!queue.isEmpty()) {
+                int q = queue.poll();
+                int[] row = next.get(q);
+                int[] failRow = next.get(fail[q]);
+                out.set(q, merge(out.get(q), out.get(fail[q])));
+                for (int c = 0; c < ALPHABET; c++) {
+                    if (row[c] < 0) {
+                        row[c] = failRow[c];
+                    } else {
+                        fail[row[c]] = failRow[c];
+                        queue.add(row[c]);
+                    }
+                }
+            }
+            delta = next.toArray(new int[n][]);
+            outputs = out.toArray(new int[n][]);
+        }
+
+        private static int[] append(int[] a, int v) {
+            if (a == null) {
+                return new int[]{v};
+            }
+            int[] b = Arrays.copyOf(a, a.length + 1);
+            b[a.length] = v;
+            return b;
+        }
+
+        private static int[] merge(int[] a, int[] b) {
+            if (b == null) {
+                return a;
+            }
+            if (a == null) {
+                return b;
+            }
+            int[] c = Arrays.copyOf(a, a.length + b.length);
+            System.arraycopy(b, 0, c, a.length, b.length);
+            return c;
+        }
+    }
+
+    public static class Builder {
+
+        private final List<Entry> entries = new ArrayList<>();
+
+        /**
+         * Add a pattern for all facilities and programs.
+         */
+        public Builder add(String field, Pattern pattern) {
+            return add(field, pattern, null, null);
+        }
+
+        /**
+         * Add a pattern.
+         *
+         * @param field the field for the first group of a match
+         * @param pattern the pattern
+         * @param facilities the facilities of the messages to match, or null for all
+         * @param programs the programs of the messages to match, or null for all
+         * @return this builder
+         */
+        public Builder add(String field, Pattern pattern, Collection<Facility> facilities, Collection<String> programs) {
+            int mask = -1;
+            if (facilities != null && !facilities.isEmpty()) {
+                mask = 0;
+                for (Facility facility : facilities) {
+                    mask |= 1 << facility.numericalCode();
+                }
+            }
+            entries.add(new Entry(field, pattern, mask,
+                    programs != null && !programs.isEmpty() ? programs.toArray(new String[programs.size()]) : null));
+            return this;
+        }
+
+        public PatternExtractor build() {
+            return new PatternExtractor(entries);
+        }
+    }
+}
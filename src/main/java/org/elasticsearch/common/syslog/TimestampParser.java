@@ -0,0 +1,387 @@
+package org.elasticsearch.common.syslog;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Parses and prints syslog timestamps on digit level, without allocating objects.
+ *
+ * The epoch day of a date is looked up in a small direct-mapped cache keyed on the date digits,
+ * the time of day is added arithmetically, so all timestamps of a day share one cache entry.
+ * RFC 3164 timestamps have no year, the year is inferred from a coarse clock which is only
+ * recomputed at month boundaries.
+ */
+public class TimestampParser {
+
+    public final static int RFC3164_LEN = 15;
+
+    public final static int PRINT_LEN = 24;
+
+    private final static long MILLIS_PER_DAY = 86400000L;
+
+    private final static int CACHE_SIZE = 64;
+
+    private final static int[] DAYS_IN_MONTH = {31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    /**
+     * Cache entries hold the date key in the upper and the epoch day in the lower 32 bits.
+     */
+    private final AtomicLongArray days = new AtomicLongArray(CACHE_SIZE);
+
+    private volatile Clock clock = new Clock(Long.MIN_VALUE, 0, 0, Long.MIN_VALUE);
+
+    /**
+     * Parse an RFC 5424 timestamp, e.g. {@code 2003-08-24T05:14:15.000003-07:00}.
+     *
+     * @param s the characters
+     * @param from the start of the timestamp
+     * @param to the end of the timestamp (exclusive)
+     * @return the epoch millis
+     * @throws IllegalArgumentException if the timestamp is not valid
+     */
+    public long parseRFC5424(CharSequence s, int from, int to) {
+        if (to - from < 20 || s.charAt(from + 4) != '-' || s.charAt(from + 7) != '-' || s.charAt(from + 10) != 'T'
+                || s.charAt(from + 13) != ':' || s.charAt(from + 16) != ':') {
+            throw invalid(s.subSequence(from, to));
+        }
+        int year = digits(s, from, 4);
+        int month = digits(s, from + 5, 2);
+        int day = digits(s, from + 8, 2);
+        int hour = digits(s, from + 11, 2);
+        int minute = digits(s, from + 14, 2);
+        int second = digits(s, from + 17, 2);
+        int pos = from + 19;
+        int millis = 0;
+        if (s.charAt(pos) == '.') {
+            int start = ++pos;
+            while (pos < to && s.charAt(pos) >= '0' && s.charAt(pos) <= '9') {
+                if (pos - start < 3) {
+                    millis = millis * 10 + (s.charAt(pos) - '0');
+                }
+                pos++;
+            }
+            if (pos == start) {
+                throw invalid(s.subSequence(from, to));
+            }
+            for (int i = pos - start; i < 3; i++) {
+                millis *= 10;
+            }
+        }
+        int offset;
+        if (pos == to - 1 && s.charAt(pos) == 'Z') {
+            offset = 0;
+        } else if (pos == to - 6 && (s.charAt(pos) == '+' || s.charAt(pos) == '-') && s.charAt(pos + 3) == ':') {
+            int hours = digits(s, pos + 1, 2);
+            int minutes = digits(s, pos + 4, 2);
+            if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59) {
+                throw invalid(s.subSequence(from, to));
+            }
+            offset = (s.charAt(pos) == '+' ? 1 : -1) * (hours * 60 + minutes);
+        } else {
+            throw invalid(s.subSequence(from, to));
+        }
+        long t = millis(year, month, day, hour, minute, second);
+        if (t == Long.MIN_VALUE) {
+            throw invalid(s.subSequence(from, to));
+        }
+        return t + millis - offset * 60000L;
+    }
+
+    /**
+     * Parse an RFC 5424 timestamp from ASCII bytes.
+     *
+     * @param b the bytes
+     * @param from the start of the timestamp
+     * @param to the end of the timestamp (exclusive)
+     * @return the epoch millis
+     * @throws IllegalArgumentException if the timestamp is not valid
+     */
+    public long parseRFC5424(byte[] b, int from, int to) {
+        if (to - from < 20 || b[from + 4] != '-' || b[from + 7] != '-' || b[from + 10] != 'T'
+                || b[from + 13] != ':' || b[from + 16] != ':') {
+            throw invalid(b, from, to);
+        }
+        int year = digits(b, from, 4);
+        int month = digits(b, from + 5, 2);
+        int day = digits(b, from + 8, 2);
+        int hour = digits(b, from + 11, 2);
+        int minute = digits(b, from + 14, 2);
+        int second = digits(b, from + 17, 2);
+        int pos = from + 19;
+        int millis = 0;
+        if (b[pos] == '.') {
+            int start = ++pos;
+            while (pos < to && b[pos] >= '0' && b[pos] <= '9') {
+                if (pos - start < 3) {
+                    millis = millis * 10 + (b[pos] - '0');
+                }
+                pos++;
+            }
+            if (pos == start) {
+                throw invalid(b, from, to);
+            }
+            for (int i = pos - start; i < 3; i++) {
+                millis *= 10;
+            }
+        }
+        int offset;
+        if (pos == to - 1 && b[pos] == 'Z') {
+            offset = 0;
+        } else if (pos == to - 6 && (b[pos] == '+' || b[pos] == '-') && b[pos + 3] == ':') {
+            int hours = digits(b, pos + 1, 2);
+            int minutes = digits(b, pos + 4, 2);
+            if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59) {
+                throw invalid(b, from, to);
+            }
+            offset = (b[pos] == '+' ? 1 : -1) * (hours * 60 + minutes);
+        } else {
+            throw invalid(b, from, to);
+        }
+        long t = millis(year, month, day, hour, minute, second);
+        if (t == Long.MIN_VALUE) {
+            throw invalid(b, from, to);
+        }
+        return t + millis - offset * 60000L;
+    }
+
+    /**
+     * Parse an RFC 3164 timestamp in UTC, e.g. {@code Oct 11 22:14:15} or {@code Oct  1 22:14:15}.
+     *
+     * @param s the characters
+     * @param from the start of the timestamp, the timestamp has {@link #RFC3164_LEN} characters
+     * @return the epoch millis, or 0 if the timestamp is not valid
+     */
+    public long parseRFC3164(CharSequence s, int from) {
+        if (s.charAt(from + 3) != ' ' || s.charAt(from + 6) != ' '
+                || s.charAt(from + 9) != ':' || s.charAt(from + 12) != ':') {
+            return 0L;
+        }
+        int month = month(s.charAt(from), s.charAt(from + 1), s.charAt(from + 2));
+        int day = s.charAt(from + 4) == ' ' ? digits(s, from + 5, 1) : digits(s, from + 4, 2);
+        return rfc3164(month, day, digits(s, from + 7, 2), digits(s, from + 10, 2), digits(s, from + 13, 2));
+    }
+
+    /**
+     * Parse an RFC 3164 timestamp in UTC from ASCII bytes.
+     *
+     * @param b the bytes
+     * @param from the start of the timestamp, the timestamp has {@link #RFC3164_LEN} bytes
+     * @return the epoch millis, or 0 if the timestamp is not valid
+     */
+    public long parseRFC3164(byte[] b, int from) {
+        if (b[from + 3] != ' ' || b[from + 6] != ' ' || b[from + 9] != ':' || b[from + 12] != ':') {
+            return 0L;
+        }
+        int month = month(b[from], b[from + 1], b[from + 2]);
+        int day = b[from + 4] == ' ' ? digits(b, from + 5, 1) : digits(b, from + 4, 2);
+        return rfc3164(month, day, digits(b, from + 7, 2), digits(b, from + 10, 2), digits(b, from + 13, 2));
+    }
+
+    /**
+     * Print epoch millis in UTC like the {@code dateOptionalTime} format, e.g. {@code 2003-08-24T12:14:15.000Z}.
+     *
+     * @param millis the epoch millis
+     * @param chars receives {@link #PRINT_LEN} characters
+     * @return false if the year can not be printed with four digits
+     */
+    public static boolean print(long millis, char[] chars) {
+        long epochDay = floorDay(millis);
+        int millisOfDay = (int) (millis - epochDay * MILLIS_PER_DAY);
+        // civil from days, see http://howardhinnant.github.io/date_algorithms.html
+        long z = epochDay + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        int doe = (int) (z - era * 146097);
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int day = doy - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            return false;
+        }
+        put(chars, 0, (int) year, 4);
+        chars[4] = '-';
+        put(chars, 5, month, 2);
+        chars[7] = '-';
+        put(chars, 8, day, 2);
+        chars[10] = 'T';
+        put(chars, 11, millisOfDay / 3600000, 2);
+        chars[13] = ':';
+        put(chars, 14, millisOfDay / 60000 % 60, 2);
+        chars[16] = ':';
+        put(chars, 17, millisOfDay / 1000 % 60, 2);
+        chars[19] = '.';
+        put(chars, 20, millisOfDay % 1000, 3);
+        chars[23] = 'Z';
+        return true;
+    }
+
+    private long rfc3164(int month, int day, int hour, int minute, int second) {
+        if (month < 1) {
+            return 0L;
+        }
+        Clock c = clock(System.currentTimeMillis());
+        int year = c.year;
+        // no year in the timestamp, so take the year which puts the month closest to now
+        if (month - c.month > 6) {
+            year--;
+        } else if (c.month - month > 6) {
+            year++;
+        }
+        long t = millis(year, month, day, hour, minute, second);
+        return t == Long.MIN_VALUE ? 0L : t;
+    }
+
+    private Clock clock(long now) {
+        Clock c = clock;
+        if (now < c.from || now >= c.until) {
+            long epochDay = floorDay(now);
+            char[] chars = new char[PRINT_LEN];
+            print(now, chars);
+            int year = (chars[0] - '0') * 1000 + (chars[1] - '0') * 100 + (chars[2] - '0') * 10 + (chars[3] - '0');
+            int month = (chars[5] - '0') * 10 + (chars[6] - '0');
+            int day = (chars[8] - '0') * 10 + (chars[9] - '0');
+            long from = (epochDay - day + 1) * MILLIS_PER_DAY;
+            long until = month == 12 ? epochDay(year + 1, 1, 1) : epochDay(year, month + 1, 1);
+            c = new Clock(from, year, month, until * MILLIS_PER_DAY);
+            clock = c;
+        }
+        return c;
+    }
+
+    /**
+     * The epoch millis of a date and time in UTC, or {@code Long.MIN_VALUE} if it is not valid.
+     */
+    private long millis(int year, int month, int day, int hour, int minute, int second) {
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > DAYS_IN_MONTH[month - 1]
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return Long.MIN_VALUE;
+        }
+        int key = year * 10000 + month * 100 + day;
+        int slot = key & (CACHE_SIZE - 1);
+        long entry = days.get(slot);
+        long epochDay;
+        if ((int) (entry >>> 32) == key) {
+            epochDay = (int) entry;
+        } else {
+            if (month == 2 && day == 29 && !(year % 4 == 0 && (year % 100 != 0 || year % 400 == 0))) {
+                return Long.MIN_VALUE;
+            }
+            epochDay = epochDay(year, month, day);
+            days.lazySet(slot, ((long) key << 32) | (epochDay & 0xffffffffL));
+        }
+        return epochDay * MILLIS_PER_DAY + hour * 3600000L + minute * 60000L + second * 1000L;
+    }
+
+    private static long floorDay(long millis) {
+        long day = millis / MILLIS_PER_DAY;
+        return millis % MILLIS_PER_DAY < 0 ? day - 1 : day;
+    }
+
+    /**
+     * Days from civil, see http://howardhinnant.github.io/date_algorithms.html
+     */
+    private static long epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yoe = y - era * 400;
+        int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097L + doe - 719468;
+    }
+
+    private static int month(int c0, int c1, int c2) {
+        switch ((c0 | 0x20) << 16 | (c1 | 0x20) << 8 | (c2 | 0x20)) {
+            case 'j' << 16 | 'a' << 8 | 'n':
+                return 1;
+            case 'f' << 16 | 'e' << 8 | 'b':
+                return 2;
+            case 'm' << 16 | 'a' << 8 | 'r':
+                return 3;
+            case 'a' << 16 | 'p' << 8 | 'r':
+                return 4;
+            case 'm' << 16 | 'a' << 8 | 'y':
+                return 5;
+            case 'j' << 16 | 'u' << 8 | 'n':
+                return 6;
+            case 'j' << 16 | 'u' << 8 | 'l':
+                return 7;
+            case 'a' << 16 | 'u' << 8 | 'g':
+                return 8;
+            case 's' << 16 | 'e' << 8 | 'p':
+                return 9;
+            case 'o' << 16 | 'c' << 8 | 't':
+                return 10;
+            case 'n' << 16 | 'o' << 8 | 'v':
+                return 11;
+            case 'd' << 16 | 'e' << 8 | 'c':
+                return 12;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Read a number of n digits, or -1 if one of the characters is not a digit.
+     */
+    private static int digits(CharSequence s, int pos, int n) {
+        int v = 0;
+        for (int i = pos; i < pos + n; i++) {
+            int d = s.charAt(i) - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            v = v * 10 + d;
+        }
+        return v;
+    }
+
+    private static int digits(byte[] b, int pos, int n) {
+        int v = 0;
+        for (int i = pos; i < pos + n; i++) {
+            int d = b[i] - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            v = v * 10 + d;
+        }
+        return v;
+    }
+
+    private static void put(char[] chars, int pos, int value, int n) {
+        for (int i = pos + n - 1; i >= pos; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static IllegalArgumentException invalid(CharSequence timestamp) {
+        return new IllegalArgumentException("bad format: not a valid RFC5424 timestamp: " + timestamp);
+    }
+
+    private static IllegalArgumentException invalid(byte[] b, int from, int to) {
+        return invalid(new String(b, from, to - from, StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * The current month, valid from the start of the month until the start of the next month.
+     */
+    private static class Clock {
+
+        final long from;
+
+        final int year;
+
+        final int month;
+
+        final long until;
+
+        Clock(long from, int year, int month, long until) {
+            this.from = from;
+            this.year = year;
+            this.month = month;
+            this.until = until;
+        }
+    }
+}
@@ -4,8 +4,11 @@ import org.elasticsearch.common.component.LifecycleComponent;
 import org.elasticsearch.common.inject.Module;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.rest.RestModule;
+import org.elasticsearch.rest.action.syslog.RestSyslogStatsAction;
 import org.elasticsearch.syslog.SyslogModule;
 import org.elasticsearch.syslog.SyslogService;
+import org.elasticsearch.syslog.SyslogThreadPool;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -46,4 +49,17 @@ public class SyslogPlugin extends Plugin {
         return services;
     }
 
+    @Override
+    public Settings additionalSettings() {
+        if (settings.getAsBoolean("plugins.syslog.enabled", true)) {
+            return SyslogThreadPool.settings(settings);
+        }
+        return Settings.EMPTY;
+    }
+
+    public void onModule(RestModule module) {
+        if (settings.getAsBoolean("plugins.syslog.enabled", true)) {
+            module.addRestAction(RestSyslogStatsAction.class);
+        }
+    }
 }
@@ -0,0 +1,51 @@
+package org.elasticsearch.rest.action.syslog;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.syslog.SyslogService;
+
+import static org.elasticsearch.rest.RestRequest.Method.GET;
+
+/**
+ * Returns the ingestion statistics of the syslog service on this node.
+ */
+public class RestSyslogStatsAction extends BaseRestHandler {
+
+    private final SyslogService syslogService;
+
+    private final ClusterService clusterService;
+
+    @Inject
+    public RestSyslogStatsAction(Settings settings, RestController controller, Client client,
+                                 SyslogService syslogService, ClusterService clusterService) {
+        super(settings, controller, client);
+        this.syslogService = syslogService;
+        this.clusterService = clusterService;
+        controller.registerHandler(GET, "/_syslog/stats", this);
+    }
+
+    @Override
+    protected void handleRequest(RestRequest request, RestChannel channel, Client client) throws Exception {
+        XContentBuilder builder = channel.newBuilder();
+        DiscoveryNode node = clusterService.localNode();
+        builder.startObject();
+        builder.startObject("nodes");
+        builder.startObject(node.id());
+        builder.field("name", node.name());
+        syslogService.stats().toXContent(builder, request);
+        builder.endObject();
+        builder.endObject();
+        builder.endObject();
+        channel.sendResponse(new BytesRestResponse(RestStatus.OK, builder));
+    }
+}
@@ -0,0 +1,169 @@
+package org.elasticsearch.syslog;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+
+/**
+ * A binary trie of IPv4 and IPv6 address prefixes in CIDR notation, with an int value per prefix.
+ *
+ * The nodes are kept in primitive arrays, a lookup walks at most one node per address bit and returns
+ * the value of the longest matching prefix. IPv4 addresses are looked up by their int value, without
+ * copying the address bytes. Prefixes are added before the trie is used, lookups are thread safe.
+ */
+public class SyslogAddressTrie {
+
+    private final static int IPV4_ROOT = 0;
+
+    private final static int IPV6_ROOT = 1;
+
+    private int[] children = new int[64];
+
+    private int[] values = new int[32];
+
+    private int nodes = 2;
+
+    public SyslogAddressTrie() {
+        Arrays.fill(values, -1);
+    }
+
+    /**
+     * Add a prefix, e.g. {@code 10.0.0.0/8}, {@code 2001:db8::/32}, or a single address.
+     *
+     * @param cidr the prefix
+     * @param value the value of the prefix, not negative
+     * @throws IllegalArgumentException if the prefix is not an IP address literal with an optional prefix length
+     */
+    public void add(String cidr, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("negative value for prefix " + cidr);
+        }
+        int slash = cidr.indexOf('/');
+        byte[] address = parse(slash < 0 ? cidr : cidr.substring(0, slash));
+        int bits = address.length * 8;
+        int prefix = bits;
+        if (slash >= 0) {
+            try {
+                prefix = Integer.parseInt(cidr.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid prefix length in " + cidr, e);
+            }
+            if (prefix < 0 || prefix > bits) {
+                throw new IllegalArgumentException("invalid prefix length in " + cidr);
+            }
+        }
+        int node = address.length == 4 ? IPV4_ROOT : IPV6_ROOT;
+        for (int i = 0; i < prefix; i++) {
+            int bit = (address[i >>> 3] >>> (7 - (i & 7))) & 1;
+            int child = children[node * 2 + bit];
+            if (child == 0) {
+                child = newNode();
+                children[node * 2 + bit] = child;
+            }
+            node = child;
+        }
+        values[node] = value;
+    }
+
+    public boolean isEmpty() {
+        return nodes == 2 && values[IPV4_ROOT] < 0 && values[IPV6_ROOT] < 0;
+    }
+
+    /**
+     * The value of the longest prefix containing the address of a socket address, or -1.
+     */
+    public int get(SocketAddress socketAddress) {
+        if (socketAddress instanceof InetSocketAddress) {
+            InetAddress address = ((InetSocketAddress) socketAddress).getAddress();
+            if (address != null) {
+                return get(address);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The value of the longest prefix containing the address, or -1.
+     */
+    public int get(InetAddress address) {
+        if (address instanceof Inet4Address) {
+            // the hash code of an IPv4 address is the address
+            return get(address.hashCode());
+        }
+        return get(address.getAddress());
+    }
+
+    /**
+     * The value of the longest prefix containing an IPv4 address, or -1.
+     */
+    public int get(int ipv4) {
+        int node = IPV4_ROOT;
+        int value = values[node];
+        for (int i = 31; i >= 0; i--) {
+            node = children[node * 2 + ((ipv4 >>> i) & 1)];
+            if (node == 0) {
+                break;
+            }
+            if (values[node] >= 0) {
+                value = values[node];
+            }
+        }
+        return value;
+    }
+
+    /**
+     * The value of the longest prefix containing an IPv4 or IPv6 address, or -1.
+     */
+    public int get(byte[] address) {
+        if (address.length == 4) {
+            return get(((address[0] & 0xff) << 24) | ((address[1] & 0xff) << 16)
+                    | ((address[2] & 0xff) << 8) | (address[3] & 0xff));
+        }
+        int node = IPV6_ROOT;
+        int value = values[node];
+        for (int i = 0; i < address.length * 8; i++) {
+            node = children[node * 2 + ((address[i >>> 3] >>> (7 - (i & 7))) & 1)];
+            if (node == 0) {
+                break;
+            }
+            if (values[node] >= 0) {
+                value = values[node];
+            }
+        }
+        return value;
+    }
+
+    private int newNode() {
+        if (nodes == values.length) {
+            children = Arrays.copyOf(children, children.length * 2);
+            int length = values.length;
+            values = Arrays.copyOf(values, length * 2);
+            Arrays.fill(values, length, values.length, -1);
+        }
+        return nodes++;
+    }
+
+    /**
+     * The bytes of an IP address literal, without name resolution.
+     */
+    static byte[] parse(String literal) {
+        boolean ipv6 = literal.indexOf(':') >= 0;
+        if (!ipv6) {
+            for (int i = 0; i < literal.length(); i++) {
+                char ch = literal.charAt(i);
+                if ((ch < '0' || ch > '9') && ch != '.') {
+                    throw new IllegalArgumentException("not an IP address: " + literal);
+                }
+            }
+        }
+        try {
+            // a literal is not resolved
+            return InetAddress.getByName(literal).getAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("not an IP address: " + literal, e);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package org.elasticsearch.syslog;
+
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.elasticsearch.common.syslog.Severity;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tracks the bytes and actions of the bulk requests in flight and applies backpressure to the listeners.
+ *
+ * When the high watermark of bytes or actions is crossed, the reads of all TCP connections are suspended
+ * and UDP messages with a severity at or below the shed severity are dropped. When both bytes and actions
+ * fall below the low watermark, TCP reads resume. Dropped messages are counted per severity.
+ *
+ * If a journal is set, messages are spilled to the journal instead, so TCP reads continue and UDP messages
+ * are not shed until the journal is full.
+ */
+public class SyslogBackpressure {
+
+    private final static ESLogger logger = ESLoggerFactory.getLogger(SyslogBackpressure.class.getName());
+
+    private final static int UNKNOWN_SEVERITY = 8;
+
+    private final long highWatermarkBytes;
+
+    private final long lowWatermarkBytes;
+
+    private final long highWatermarkActions;
+
+    private final long lowWatermarkActions;
+
+    private final int shedSeverity;
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    private final AtomicLong actions = new AtomicLong();
+
+    private final AtomicLong pauses = new AtomicLong();
+
+    private final AtomicLongArray dropped = new AtomicLongArray(UNKNOWN_SEVERITY + 1);
+
+    private final AtomicLong totalDropped = new AtomicLong();
+
+    private final ChannelGroup channels = new DefaultChannelGroup("syslog");
+
+    private volatile boolean paused;
+
+    private volatile SyslogJournal journal;
+
+    public SyslogBackpressure(long highWatermarkBytes, long lowWatermarkBytes,
+                              long highWatermarkActions, long lowWatermarkActions, Severity shedSeverity) {
+        this.highWatermarkBytes = highWatermarkBytes;
+        this.lowWatermarkBytes = lowWatermarkBytes;
+        this.highWatermarkActions = highWatermarkActions;
+        this.lowWatermarkActions = lowWatermarkActions;
+        this.shedSeverity = shedSeverity.numericalCode();
+    }
+
+    public void setJournal(SyslogJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Register a TCP connection. Its reads are suspended immediately if backpressure is active.
+     */
+    public synchronized void register(Channel channel) {
+        channels.add(channel);
+        if (paused && !spilling()) {
+            channel.setReadable(false);
+        }
+    }
+
+    /**
+     * An action was added to the bulk processor.
+     */
+    public void added(long bytes) {
+        long b = this.bytes.addAndGet(bytes);
+        long a = actions.incrementAndGet();
+        if (!paused && (b > highWatermarkBytes || a > highWatermarkActions)) {
+            pause();
+        }
+    }
+
+    /**
+     * A bulk request completed, successfully or not.
+     */
+    public void completed(long actions, long bytes) {
+        long b = this.bytes.addAndGet(-bytes);
+        long a = this.actions.addAndGet(-actions);
+        if (paused && b <= lowWatermarkBytes && a <= lowWatermarkActions) {
+            resume();
+        }
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * If a UDP message should be shed because backpressure is active.
+     *
+     * @param severity the severity numerical code, or -1 if unknown
+     */
+    public boolean shouldShed(int severity) {
+        return paused && !spilling() && (severity < 0 || severity >= shedSeverity);
+    }
+
+    /**
+     * The journal is full, so TCP reads are suspended while backpressure is active.
+     */
+    public synchronized void journalFull() {
+        if (paused) {
+            channels.setReadable(false);
+        }
+    }
+
+    /**
+     * Count a dropped message.
+     *
+     * @param severity the severity numerical code, or -1 if unknown
+     */
+    public void drop(int severity) {
+        dropped.incrementAndGet(severity < 0 || severity >= UNKNOWN_SEVERITY ? UNKNOWN_SEVERITY : severity);
+        long n = totalDropped.incrementAndGet();
+        if (n % 10000 == 1) {
+            logger.warn("syslog messages dropped: {}, bulk in flight: {} bytes, {} actions",
+                    n, bytes.get(), actions.get());
+        }
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public long getActions() {
+        return actions.get();
+    }
+
+    public long getPauses() {
+        return pauses.get();
+    }
+
+    /**
+     * Dropped messages of a severity.
+     *
+     * @param severity the severity numerical code, or -1 for messages without a valid priority
+     */
+    public long getDropped(int severity) {
+        return dropped.get(severity < 0 ? UNKNOWN_SEVERITY : severity);
+    }
+
+    public long getTotalDropped() {
+        return totalDropped.get();
+    }
+
+    private synchronized void pause() {
+        // the counters may have changed since the caller checked them
+        if (paused || !aboveHighWatermark()) {
+            return;
+        }
+        paused = true;
+        pauses.incrementAndGet();
+        if (!spilling()) {
+            channels.setReadable(false);
+        }
+        logger.info("syslog backpressure on, bulk in flight: {} bytes, {} actions", bytes.get(), actions.get());
+        // a completion that saw the old state did not try to resume
+        if (belowLowWatermark()) {
+            resume();
+        }
+    }
+
+    private synchronized void resume() {
+        if (!paused || !belowLowWatermark()) {
+            return;
+        }
+        paused = false;
+        channels.setReadable(true);
+        logger.info("syslog backpressure off, bulk in flight: {} bytes, {} actions", bytes.get(), actions.get());
+        // an addition that saw the old state did not try to pause
+        if (aboveHighWatermark()) {
+            pause();
+        }
+    }
+
+    private boolean aboveHighWatermark() {
+        return bytes.get() > highWatermarkBytes || actions.get() > highWatermarkActions;
+    }
+
+    private boolean belowLowWatermark() {
+        return bytes.get() <= lowWatermarkBytes && actions.get() <= lowWatermarkActions;
+    }
+
+    private boolean spilling() {
+        SyslogJournal journal = this.journal;
+        return journal != null && !journal.isFull();
+    }
+}
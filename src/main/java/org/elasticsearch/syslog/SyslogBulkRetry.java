@@ -0,0 +1,147 @@
+package org.elasticsearch.syslog;
+
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.elasticsearch.common.unit.TimeValue;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resubmits rejected index requests with jittered exponential backoff.
+ *
+ * The delay of a retry is drawn uniformly between zero and {@code min(max_delay, initial_delay * 2^attempt)},
+ * so the retries of a rejected bulk request do not hit the cluster at the same time again.
+ * The number of retries of a request and the number of requests waiting for a retry are bounded.
+ * The attempt is kept in the request context.
+ */
+public class SyslogBulkRetry {
+
+    private final static ESLogger logger = ESLoggerFactory.getLogger(SyslogBulkRetry.class.getName());
+
+    private final static String ATTEMPT = "syslog.retry.attempt";
+
+    private final long initialDelayMillis;
+
+    private final long maxDelayMillis;
+
+    private final int maxRetries;
+
+    private final int budget;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Sink sink;
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final AtomicLong retried = new AtomicLong();
+
+    private final AtomicLong exhausted = new AtomicLong();
+
+    public SyslogBulkRetry(TimeValue initialDelay, TimeValue maxDelay, int maxRetries, int budget,
+                           ScheduledExecutorService scheduler, Sink sink) {
+        this.initialDelayMillis = Math.max(1L, initialDelay.millis());
+        this.maxDelayMillis = Math.max(initialDelayMillis, maxDelay.millis());
+        this.maxRetries = maxRetries;
+        this.budget = budget;
+        this.scheduler = scheduler;
+        this.sink = sink;
+    }
+
+    /**
+     * Schedule a retry of a rejected request.
+     *
+     * @param request the request
+     * @return false if the request has no retries left, or too many requests are waiting for a retry
+     */
+    public boolean retry(final IndexRequest request) {
+        int attempt = attempt(request);
+        if (attempt >= maxRetries) {
+            exhausted.incrementAndGet();
+            return false;
+        }
+        if (pending.incrementAndGet() > budget) {
+            pending.decrementAndGet();
+            exhausted.incrementAndGet();
+            return false;
+        }
+        request.putInContext(ATTEMPT, attempt + 1);
+        try {
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    pending.decrementAndGet();
+                    try {
+                        sink.retry(request);
+                    } catch (Exception e) {
+                        logger.warn("failed to retry index request", e);
+                    }
+                }
+            }, delay(attempt), TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            // scheduler shut down
+            pending.decrementAndGet();
+            exhausted.incrementAndGet();
+            return false;
+        }
+        retried.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Wait until the scheduled retries are handed to the sink.
+     *
+     * @param timeout the maximum time to wait in milliseconds
+     */
+    public void awaitPending(long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+        try {
+            while (pending.get() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10L);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The number of retries of a request so far.
+     */
+    public static int attempt(IndexRequest request) {
+        Integer attempt = request.getFromContext(ATTEMPT);
+        return attempt != null ? attempt : 0;
+    }
+
+    long delay(int attempt) {
+        long ceiling = initialDelayMillis;
+        for (int i = 0; i < attempt && ceiling < maxDelayMillis; i++) {
+            ceiling <<= 1;
+        }
+        return ThreadLocalRandom.current().nextLong(Math.min(maxDelayMillis, ceiling) + 1);
+    }
+
+    public int getPending() {
+        return pending.get();
+    }
+
+    public long getRetried() {
+        return retried.get();
+    }
+
+    public long getExhausted() {
+        return exhausted.get();
+    }
+
+    /**
+     * Receives the requests to retry.
+     */
+    public interface Sink {
+
+        void retry(IndexRequest request);
+    }
+}
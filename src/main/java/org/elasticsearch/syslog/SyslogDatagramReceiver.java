@@ -0,0 +1,244 @@
+package org.elasticsearch.syslog;
+
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.SlicedChannelBuffer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Receives syslog datagrams from a non-blocking datagram channel.
+ *
+ * The socket receive buffer ({@code SO_RCVBUF}) is independent from the read buffer. The reader
+ * receives into one reused direct buffer of the maximum datagram size and drains up to
+ * {@code maxDatagramsPerRead} datagrams per selector wakeup. Each datagram is copied into a
+ * right-sized slice of a receive slab. Slabs are reference counted: when the current slab is full
+ * and every slice of it has been released by {@link #release(ChannelBuffer)}, it goes back to a
+ * small pool and is reused. A slice that is never released only keeps its slab out of the pool.
+ */
+public class SyslogDatagramReceiver implements Runnable {
+
+    private final static ESLogger logger = ESLoggerFactory.getLogger(SyslogDatagramReceiver.class.getName());
+
+    public final static int MAX_DATAGRAM_SIZE = 65536;
+
+    private final static int SLAB_SIZE = 4 * MAX_DATAGRAM_SIZE;
+
+    private final static int MAX_POOLED_SLABS = 16;
+
+    private final static long SELECT_TIMEOUT_MILLIS = 500L;
+
+    private final DatagramChannel channel;
+
+    private final Selector selector;
+
+    private final SocketAddress localAddress;
+
+    private final int maxDatagramsPerRead;
+
+    private final Listener listener;
+
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    private final CounterMetric slabs = new CounterMetric();
+
+    private final BlockingQueue<Slab> pool = new ArrayBlockingQueue<>(MAX_POOLED_SLABS);
+
+    private volatile boolean running = true;
+
+    private Slab slab;
+
+    private int slabPos;
+
+    public SyslogDatagramReceiver(InetSocketAddress bindAddress, int receiveBufferSize, int maxDatagramsPerRead,
+                                  Listener listener) throws IOException {
+        this.maxDatagramsPerRead = maxDatagramsPerRead;
+        this.listener = listener;
+        this.channel = DatagramChannel.open();
+        try {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+            channel.bind(bindAddress);
+            channel.configureBlocking(false);
+            this.selector = Selector.open();
+            channel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.localAddress = channel.getLocalAddress();
+    }
+
+    public SocketAddress getLocalAddress() {
+        return localAddress;
+    }
+
+    /**
+     * The number of slabs allocated, slabs taken from the pool are not counted.
+     */
+    public long getSlabs() {
+        return slabs.count();
+    }
+
+    /**
+     * Release a buffer received by the listener, after it has been processed. Buffers that were
+     * not received from a datagram receiver are ignored.
+     */
+    public static void release(ChannelBuffer buffer) {
+        if (buffer instanceof SlabBuffer) {
+            ((SlabBuffer) buffer).release();
+        }
+    }
+
+    @Override
+    public void run() {
+        ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+        try {
+            while (running) {
+                if (selector.select(SELECT_TIMEOUT_MILLIS) == 0) {
+                    continue;
+                }
+                selector.selectedKeys().clear();
+                for (int i = 0; i < maxDatagramsPerRead; i++) {
+                    SocketAddress remoteAddress = channel.receive(receiveBuffer);
+                    if (remoteAddress == null) {
+                        break;
+                    }
+                    receiveBuffer.flip();
+                    int length = receiveBuffer.remaining();
+                    if (length > 0) {
+                        try {
+                            listener.onDatagram(localAddress, remoteAddress, copy(receiveBuffer, length));
+                        } catch (Exception e) {
+                            logger.warn("failed to process datagram from {}", e, remoteAddress);
+                        }
+                    }
+                    receiveBuffer.clear();
+                }
+            }
+        } catch (ClosedChannelException | ClosedSelectorException e) {
+            // closed while receiving
+        } catch (IOException e) {
+            logger.error("receiving datagrams on {} failed", e, localAddress);
+        } finally {
+            try {
+                channel.close();
+                selector.close();
+            } catch (IOException e) {
+                logger.warn("failed to close datagram channel {}", e, localAddress);
+            }
+            if (slab != null) {
+                slab.release();
+                slab = null;
+            }
+            terminated.countDown();
+        }
+    }
+
+    /**
+     * Stop receiving and wait for the reader to close the channel.
+     */
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            if (!terminated.await(SELECT_TIMEOUT_MILLIS * 2, TimeUnit.MILLISECONDS)) {
+                channel.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.warn("failed to close datagram channel {}", e, localAddress);
+        }
+    }
+
+    private ChannelBuffer copy(ByteBuffer receiveBuffer, int length) {
+        if (slab == null || SLAB_SIZE - slabPos < length) {
+            if (slab != null) {
+                // the reader's reference, the slab is pooled when the last slice is released
+                slab.release();
+            }
+            slab = pool.poll();
+            if (slab == null) {
+                slab = new Slab(pool);
+                slabs.inc();
+            }
+            slab.refs.set(1);
+            slabPos = 0;
+        }
+        receiveBuffer.get(slab.bytes, slabPos, length);
+        slab.refs.incrementAndGet();
+        ChannelBuffer buffer = new SlabBuffer(slab, slabPos, length);
+        slabPos += length;
+        return buffer;
+    }
+
+    private static class Slab {
+
+        private final byte[] bytes = new byte[SLAB_SIZE];
+
+        private final AtomicInteger refs = new AtomicInteger();
+
+        private final BlockingQueue<Slab> pool;
+
+        private final ChannelBuffer buffer = ChannelBuffers.wrappedBuffer(bytes);
+
+        Slab(BlockingQueue<Slab> pool) {
+            this.pool = pool;
+        }
+
+        void release() {
+            if (refs.decrementAndGet() == 0) {
+                // dropped if the pool is full
+                pool.offer(this);
+            }
+        }
+    }
+
+    /**
+     * A datagram in a slab, released once by the thread that processed it.
+     */
+    private static class SlabBuffer extends SlicedChannelBuffer {
+
+        private final Slab slab;
+
+        private boolean released;
+
+        SlabBuffer(Slab slab, int index, int length) {
+            super(slab.buffer, index, length);
+            this.slab = slab;
+        }
+
+        void release() {
+            if (!released) {
+                released = true;
+                slab.release();
+            }
+        }
+    }
+
+    /**
+     * Receives the datagrams, called on the reader thread. Buffers that are handed over to another
+     * thread must be released there, see {@link #release(ChannelBuffer)}.
+     */
+    public interface Listener {
+
+        void onDatagram(SocketAddress localAddress, SocketAddress remoteAddress, ChannelBuffer buffer) throws IOException;
+    }
+}
@@ -0,0 +1,218 @@
+package org.elasticsearch.syslog;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * Detects bursts of identical messages within a time window.
+ *
+ * Messages are identified by a 64 bit hash of the priority and of everything after the timestamp, that is
+ * host, program and message body. The first occurrence of a message passes and opens a window, repeats
+ * within the window are counted and suppressed. When the window has passed, a message with repeats is
+ * reported to the listener once, with the number of repeats and the time of the first and the last one.
+ *
+ * The state is kept in an open-addressing table of primitive arrays with linear probing. Expired entries are
+ * removed by {@link #expire(long, Listener)}, which should be called regularly. If the table is full, new
+ * messages pass without being tracked. Not thread safe, each worker has its own deduplicator.
+ */
+public class SyslogDeduplicator {
+
+    private final static long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private final static long FNV_PRIME = 0x100000001b3L;
+
+    private final long windowMillis;
+
+    private final int mask;
+
+    private final int maxSize;
+
+    private final long[] keys;
+
+    private final long[] firstSeen;
+
+    private final long[] lastSeen;
+
+    private final int[] repeats;
+
+    private final Object[] firsts;
+
+    private int size;
+
+    private int lastSlot = -1;
+
+    /**
+     * @param windowMillis the time window in milliseconds
+     * @param capacity the maximum number of tracked messages
+     */
+    public SyslogDeduplicator(long windowMillis, int capacity) {
+        this.windowMillis = windowMillis;
+        int tableSize = Integer.highestOneBit(Math.max(16, capacity) * 2 - 1) << 1;
+        this.mask = tableSize - 1;
+        this.maxSize = tableSize / 2;
+        this.keys = new long[tableSize];
+        this.firstSeen = new long[tableSize];
+        this.lastSeen = new long[tableSize];
+        this.repeats = new int[tableSize];
+        this.firsts = new Object[tableSize];
+    }
+
+    /**
+     * Check a message.
+     *
+     * @param key the message key, see {@link #key(ChannelBuffer, long)}
+     * @param now the current time in milliseconds
+     * @param listener receives the repeats of the previous window if it has passed
+     * @return true if the message repeats a message of the current window and should be suppressed
+     */
+    public boolean isRepeat(long key, long now, Listener listener) {
+        lastSlot = -1;
+        int i = slot(key);
+        while (keys[i] != 0L) {
+            if (keys[i] == key) {
+                if (now - firstSeen[i] < windowMillis) {
+                    repeats[i]++;
+                    lastSeen[i] = now;
+                    return true;
+                }
+                // window passed, this message opens a new one
+                report(i, listener);
+                firstSeen[i] = now;
+                lastSeen[i] = now;
+                repeats[i] = 0;
+                firsts[i] = null;
+                lastSlot = i;
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        if (size >= maxSize) {
+            return false;
+        }
+        keys[i] = key;
+        firstSeen[i] = now;
+        lastSeen[i] = now;
+        repeats[i] = 0;
+        firsts[i] = null;
+        size++;
+        lastSlot = i;
+        return false;
+    }
+
+    /**
+     * Attach the first occurrence to the message that was checked last, so it can be reported with its repeats.
+     */
+    public void attach(Object first) {
+        if (lastSlot >= 0) {
+            firsts[lastSlot] = first;
+            lastSlot = -1;
+        }
+    }
+
+    /**
+     * Remove the messages whose window has passed, and report their repeats.
+     *
+     * @param now the current time in milliseconds, or {@code Long.MAX_VALUE} to remove all messages
+     */
+    public void expire(long now, Listener listener) {
+        lastSlot = -1;
+        int i = 0;
+        while (i <= mask) {
+            if (keys[i] != 0L && (now == Long.MAX_VALUE || now - firstSeen[i] >= windowMillis)) {
+                report(i, listener);
+                remove(i);
+                // an entry may have been shifted into this slot
+                continue;
+            }
+            i++;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The key of a message: a hash of the priority and of the bytes after the timestamp, and a seed,
+     * e.g. the listener. Zero is never returned.
+     */
+    public static long key(ChannelBuffer buffer, long seed) {
+        int start = buffer.readerIndex();
+        int limit = buffer.writerIndex();
+        long h = FNV_OFFSET ^ seed;
+        int pos = start;
+        // priority
+        if (pos < limit && buffer.getByte(pos) == '<') {
+            while (pos < limit && buffer.getByte(pos) != '>') {
+                h = (h ^ buffer.getByte(pos++)) * FNV_PRIME;
+            }
+            pos++;
+        }
+        pos = skipTimestamp(buffer, pos, limit);
+        for (int i = pos; i < limit; i++) {
+            h = (h ^ buffer.getByte(i)) * FNV_PRIME;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h != 0L ? h : 1L;
+    }
+
+    private static int skipTimestamp(ChannelBuffer buffer, int pos, int limit) {
+        if (pos + 2 < limit && buffer.getByte(pos) == '1' && buffer.getByte(pos + 1) == ' ') {
+            // RFC 5424: version and timestamp
+            int i = pos + 2;
+            while (i < limit && buffer.getByte(i) != ' ') {
+                i++;
+            }
+            return i;
+        }
+        if (pos + 15 <= limit && buffer.getByte(pos + 3) == ' ' && buffer.getByte(pos + 6) == ' '
+                && buffer.getByte(pos + 9) == ':' && buffer.getByte(pos + 12) == ':') {
+            // RFC 3164: Mmm dd hh:mm:ss
+            return pos + 15;
+        }
+        return pos;
+    }
+
+    private int slot(long key) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+
+    private void report(int i, Listener listener) {
+        if (repeats[i] > 0 && firsts[i] != null) {
+            listener.repeated(firsts[i], repeats[i], firstSeen[i], lastSeen[i]);
+        }
+    }
+
+    private void remove(int i) {
+        // backward shift deletion keeps the probe sequences intact
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (keys[j] == 0L) {
+                break;
+            }
+            int k = slot(keys[j]);
+            if (i <= j ? (i < k && k <= j) : (i < k || k <= j)) {
+                continue;
+            }
+            keys[i] = keys[j];
+            firstSeen[i] = firstSeen[j];
+            lastSeen[i] = lastSeen[j];
+            repeats[i] = repeats[j];
+            firsts[i] = firsts[j];
+            i = j;
+        }
+        keys[i] = 0L;
+        firsts[i] = null;
+        size--;
+    }
+
+    /**
+     * Receives the repeats of a message after its window has passed.
+     */
+    public interface Listener {
+
+        void repeated(Object first, int repeats, long firstSeen, long lastSeen);
+    }
+}
@@ -0,0 +1,161 @@
+package org.elasticsearch.syslog;
+
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.syslog.Facility;
+import org.elasticsearch.common.syslog.MessageParser;
+import org.elasticsearch.common.syslog.Severity;
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import java.net.SocketAddress;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Drop and route rules, evaluated on the priority bytes and the remote address before a message is decoded.
+ *
+ * The facilities and severities of a rule are compiled into a bitmap of the 192 priority values, the remote
+ * address prefixes into an {@link SyslogAddressTrie}. The first matching rule decides: {@code drop} sheds the
+ * message, {@code keep} indexes it as usual, {@code route} indexes it into the index of the rule.
+ */
+public class SyslogFilter {
+
+    private final Rule[] rules;
+
+    private final boolean routes;
+
+    public SyslogFilter(List<Rule> rules) {
+        this.rules = rules.toArray(new Rule[rules.size()]);
+        boolean routes = false;
+        for (Rule rule : rules) {
+            routes |= rule.action == Action.ROUTE;
+        }
+        this.routes = routes;
+    }
+
+    public Rule[] getRules() {
+        return rules;
+    }
+
+    /**
+     * If any rule routes messages.
+     */
+    public boolean routes() {
+        return routes;
+    }
+
+    /**
+     * The first rule matching a message.
+     *
+     * @param remoteAddress the sender
+     * @param buffer the message, not consumed
+     * @return the rule, or null if no rule matches
+     */
+    public Rule match(SocketAddress remoteAddress, ChannelBuffer buffer) {
+        int pri = MessageParser.parsePriority(buffer);
+        for (Rule rule : rules) {
+            if (rule.matches(pri, remoteAddress)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The action of a rule.
+     */
+    public enum Action {
+        DROP, KEEP, ROUTE
+    }
+
+    /**
+     * A filter rule.
+     */
+    public static class Rule {
+
+        private final String name;
+
+        private final Action action;
+
+        private final long[] priorities;
+
+        private final boolean anyPriority;
+
+        private final SyslogAddressTrie remotes;
+
+        private final SyslogIndexNameResolver indexNameResolver;
+
+        private final String type;
+
+        private final CounterMetric matched = new CounterMetric();
+
+        /**
+         * @param name the name of the rule
+         * @param action what to do with matching messages
+         * @param facilities the facilities of the matching messages, empty for all
+         * @param severities the severities of the matching messages, empty for all
+         * @param remotes the address prefixes of the senders of matching messages, empty for all
+         * @param index the index of routed messages, null if not routed
+         * @param type the type of routed messages, null for the type of the listener
+         */
+        public Rule(String name, Action action, Collection<Facility> facilities, Collection<Severity> severities,
+                    Collection<String> remotes, String index, String type) {
+            if (action == Action.ROUTE && index == null) {
+                throw new IllegalArgumentException("rule [" + name + "] routes without index");
+            }
+            this.name = name;
+            this.action = action;
+            this.anyPriority = facilities.isEmpty() && severities.isEmpty();
+            this.priorities = new long[3];
+            for (int pri = 0; pri < 192; pri++) {
+                if ((facilities.isEmpty() || facilities.contains(Facility.fromNumericalCode(pri / 8)))
+                        && (severities.isEmpty() || severities.contains(Severity.fromNumericalCode(pri % 8)))) {
+                    priorities[pri >>> 6] |= 1L << pri;
+                }
+            }
+            if (remotes.isEmpty()) {
+                this.remotes = null;
+            } else {
+                this.remotes = new SyslogAddressTrie();
+                for (String remote : remotes) {
+                    this.remotes.add(remote, 0);
+                }
+            }
+            this.indexNameResolver = index != null ? new SyslogIndexNameResolver(index) : null;
+            this.type = type;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Action getAction() {
+            return action;
+        }
+
+        public SyslogIndexNameResolver getIndexNameResolver() {
+            return indexNameResolver;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public long getMatched() {
+            return matched.count();
+        }
+
+        /**
+         * Count a message this rule was applied to.
+         */
+        public void matched() {
+            matched.inc();
+        }
+
+        boolean matches(int pri, SocketAddress remoteAddress) {
+            if (pri < 0 ? !anyPriority : (priorities[pri >>> 6] & (1L << pri)) == 0L) {
+                return false;
+            }
+            return remotes == null || remotes.get(remoteAddress) >= 0;
+        }
+    }
+}
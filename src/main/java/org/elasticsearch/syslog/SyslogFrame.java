@@ -0,0 +1,67 @@
+package org.elasticsearch.syslog;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import java.net.SocketAddress;
+
+/**
+ * A received syslog frame, waiting in a ring buffer slot for a worker.
+ * The slots are allocated once and reused, fields are reset when a worker releases the slot.
+ */
+public class SyslogFrame {
+
+    SyslogListener listener;
+
+    String protocol;
+
+    SocketAddress localAddress;
+
+    SocketAddress remoteAddress;
+
+    ChannelBuffer buffer;
+
+    long receivedNanos;
+
+    void set(SyslogListener listener, String protocol, SocketAddress localAddress, SocketAddress remoteAddress,
+             ChannelBuffer buffer) {
+        this.listener = listener;
+        this.protocol = protocol;
+        this.localAddress = localAddress;
+        this.remoteAddress = remoteAddress;
+        this.buffer = buffer;
+        this.receivedNanos = System.nanoTime();
+    }
+
+    void clear() {
+        SyslogDatagramReceiver.release(buffer);
+        this.listener = null;
+        this.protocol = null;
+        this.localAddress = null;
+        this.remoteAddress = null;
+        this.buffer = null;
+    }
+
+    public SyslogListener getListener() {
+        return listener;
+    }
+
+    public String getProtocol() {
+        return protocol;
+    }
+
+    public SocketAddress getLocalAddress() {
+        return localAddress;
+    }
+
+    public SocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    public ChannelBuffer getBuffer() {
+        return buffer;
+    }
+
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+}
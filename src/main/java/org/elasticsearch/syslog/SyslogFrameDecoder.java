@@ -0,0 +1,141 @@
+package org.elasticsearch.syslog;
+
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a syslog TCP stream into frames as described in
+ * <a href="https://tools.ietf.org/html/rfc6587">RFC 6587 - Transmission of Syslog Messages over TCP</a>.
+ * A frame starting with a digit uses octet counting ({@code MSG-LEN SP SYSLOG-MSG}), all other frames
+ * are delimited by LF (non-transparent framing), an optional trailing CR is removed.
+ * All frames which are complete after a read are handed to the next handler as one list.
+ * Frames longer than the maximum frame size are discarded.
+ */
+public class SyslogFrameDecoder extends FrameDecoder {
+
+    private final static ESLogger logger = ESLoggerFactory.getLogger(SyslogFrameDecoder.class.getName());
+
+    private final static int MAX_LENGTH_DIGITS = 9;
+
+    private final int maxFrameSize;
+
+    private long discardBytes;
+
+    private boolean discardLine;
+
+    public SyslogFrameDecoder(int maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    @Override
+    protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+        List<ChannelBuffer> frames = null;
+        while (buffer.readable()) {
+            if (discardBytes > 0) {
+                int n = (int) Math.min(discardBytes, buffer.readableBytes());
+                buffer.skipBytes(n);
+                discardBytes -= n;
+                continue;
+            }
+            int start = buffer.readerIndex();
+            int limit = buffer.writerIndex();
+            if (discardLine) {
+                int eol = buffer.indexOf(start, limit, (byte) '\n');
+                if (eol < 0) {
+                    buffer.skipBytes(buffer.readableBytes());
+                    break;
+                }
+                buffer.readerIndex(eol + 1);
+                discardLine = false;
+                continue;
+            }
+            byte first = buffer.getByte(start);
+            if (first == '\n' || first == '\r') {
+                buffer.skipBytes(1);
+                continue;
+            }
+            if (first >= '1' && first <= '9') {
+                int length = 0;
+                int pos = start;
+                byte b = first;
+                while (b >= '0' && b <= '9' && pos - start < MAX_LENGTH_DIGITS) {
+                    length = length * 10 + (b - '0');
+                    if (++pos == limit) {
+                        break;
+                    }
+                    b = buffer.getByte(pos);
+                }
+                if (pos == limit) {
+                    // length not complete yet
+                    break;
+                }
+                if (b == ' ') {
+                    if (length > maxFrameSize) {
+                        logger.warn("discarding frame of length {} from {}, exceeds max frame size {}",
+                                length, channel.getRemoteAddress(), maxFrameSize);
+                        buffer.readerIndex(pos + 1);
+                        discardBytes = length;
+                        continue;
+                    }
+                    if (limit - (pos + 1) < length) {
+                        break;
+                    }
+                    if (frames == null) {
+                        frames = new ArrayList<>();
+                    }
+                    frames.add(extractFrame(buffer, pos + 1, length));
+                    buffer.readerIndex(pos + 1 + length);
+                    continue;
+                }
+                // not a valid message length, fall back to LF delimited framing
+            }
+            int eol = buffer.indexOf(start, limit, (byte) '\n');
+            if (eol < 0) {
+                if (limit - start > maxFrameSize) {
+                    logger.warn("discarding frame from {}, exceeds max frame size {}",
+                            channel.getRemoteAddress(), maxFrameSize);
+                    buffer.skipBytes(buffer.readableBytes());
+                    discardLine = true;
+                }
+                break;
+            }
+            int end = eol > start && buffer.getByte(eol - 1) == '\r' ? eol - 1 : eol;
+            if (end - start > maxFrameSize) {
+                logger.warn("discarding frame from {}, exceeds max frame size {}",
+                        channel.getRemoteAddress(), maxFrameSize);
+            } else {
+                if (frames == null) {
+                    frames = new ArrayList<>();
+                }
+                frames.add(extractFrame(buffer, start, end - start));
+            }
+            buffer.readerIndex(eol + 1);
+        }
+        return frames;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Object decodeLast(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+        List<ChannelBuffer> frames = (List<ChannelBuffer>) decode(ctx, channel, buffer);
+        if (buffer.readable() && discardBytes == 0 && !discardLine) {
+            byte first = buffer.getByte(buffer.readerIndex());
+            if (first < '0' || first > '9') {
+                // last LF delimited frame without trailing LF
+                if (frames == null) {
+                    frames = new ArrayList<>();
+                }
+                frames.add(extractFrame(buffer, buffer.readerIndex(), buffer.readableBytes()));
+            }
+            buffer.skipBytes(buffer.readableBytes());
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,133 @@
+package org.elasticsearch.syslog;
+
+import org.elasticsearch.common.hash.MurmurHash3;
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates document IDs for syslog messages.
+ *
+ * IDs are encoded with 64 URL safe characters in ASCII order, so the order of the encoded IDs is the order
+ * of their bits. Generators are thread safe and lock-free.
+ */
+public abstract class SyslogIdGenerator {
+
+    private final static char[] ALPHABET =
+            "-0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz".toCharArray();
+
+    /**
+     * The ID of a message.
+     *
+     * @param remoteAddress the sender
+     * @param buffer the message, not consumed
+     */
+    public abstract String id(SocketAddress remoteAddress, ChannelBuffer buffer);
+
+    /**
+     * Create a generator.
+     *
+     * @param strategy {@code flake} or {@code hash}, or {@code auto} for IDs generated by Elasticsearch
+     * @return the generator, or null for {@code auto}
+     */
+    public static SyslogIdGenerator create(String strategy) {
+        switch (strategy) {
+            case "auto":
+                return null;
+            case "flake":
+                return new Flake(new SecureRandom().nextInt());
+            case "hash":
+                return new ContentHash();
+            default:
+                throw new IllegalArgumentException("unknown document ID strategy [" + strategy + "], expected auto, flake or hash");
+        }
+    }
+
+    /**
+     * Encode the upper 60 bits of a value into 10 characters.
+     */
+    private static void encode(long value, char[] chars, int pos) {
+        for (int i = 0; i < 10; i++) {
+            chars[pos + i] = ALPHABET[(int) (value >>> (58 - 6 * i)) & 63];
+        }
+    }
+
+    /**
+     * Time ordered IDs of 15 characters: 42 bits of milliseconds since the epoch, 22 bits of sequence and
+     * 24 bits of node. IDs of a node only grow, also if the clock goes back or more than 4 million IDs are
+     * generated in a millisecond. Consecutive IDs share long prefixes, which keeps the terms of the ID field
+     * close together for Lucene.
+     */
+    public static class Flake extends SyslogIdGenerator {
+
+        private final static int SEQUENCE_BITS = 22;
+
+        private final AtomicLong last = new AtomicLong();
+
+        private final long node;
+
+        public Flake(int node) {
+            this.node = node & 0xffffffL;
+        }
+
+        @Override
+        public String id(SocketAddress remoteAddress, ChannelBuffer buffer) {
+            return id(System.currentTimeMillis());
+        }
+
+        public String id(long millis) {
+            long next;
+            while (true) {
+                long current = last.get();
+                next = millis << SEQUENCE_BITS;
+                // unsigned, from 2^41 milliseconds on the time reaches the sign bit
+                if (next + Long.MIN_VALUE <= current + 1 + Long.MIN_VALUE) {
+                    next = current + 1;
+                }
+                if (last.compareAndSet(current, next)) {
+                    break;
+                }
+            }
+            char[] chars = new char[15];
+            encode(next, chars, 0);
+            long tail = ((next & 0xfL) << 26) | (node << 2);
+            for (int i = 0; i < 5; i++) {
+                chars[10 + i] = ALPHABET[(int) (tail >>> (24 - 6 * i)) & 63];
+            }
+            return new String(chars);
+        }
+    }
+
+    /**
+     * IDs of 20 characters from a 128 bit hash of the sender address and the message, including its
+     * timestamp. A message that is sent, retried or replayed again gets the same ID, so it is indexed once.
+     */
+    public static class ContentHash extends SyslogIdGenerator {
+
+        @Override
+        public String id(SocketAddress remoteAddress, ChannelBuffer buffer) {
+            long seed = 0L;
+            if (remoteAddress instanceof InetSocketAddress && ((InetSocketAddress) remoteAddress).getAddress() != null) {
+                // the address without the port, a sender may reconnect from another port
+                seed = ((InetSocketAddress) remoteAddress).getAddress().hashCode();
+            }
+            int length = buffer.readableBytes();
+            MurmurHash3.Hash128 hash;
+            if (buffer.hasArray()) {
+                hash = MurmurHash3.hash128(buffer.array(), buffer.arrayOffset() + buffer.readerIndex(), length, seed,
+                        new MurmurHash3.Hash128());
+            } else {
+                byte[] bytes = new byte[length];
+                buffer.getBytes(buffer.readerIndex(), bytes);
+                hash = MurmurHash3.hash128(bytes, 0, length, seed, new MurmurHash3.Hash128());
+            }
+            char[] chars = new char[20];
+            encode(hash.h1, chars, 0);
+            encode(hash.h2, chars, 10);
+            return new String(chars);
+        }
+    }
+}
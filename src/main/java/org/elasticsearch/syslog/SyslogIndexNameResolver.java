@@ -0,0 +1,154 @@
+package org.elasticsearch.syslog;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeFieldType;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Resolves the index name for a point in time.
+ *
+ * For a time window pattern like {@code 'syslog-'YYYY.MM.dd}, the name of the current window
+ * is formatted once, together with the time of the next window boundary. Until the boundary is
+ * reached, resolving is a range check on the cached window, which also catches a clock set back.
+ * The boundary is the earliest next change of any date field in the pattern, so daily, hourly
+ * or weekly windows work alike.
+ */
+public class SyslogIndexNameResolver {
+
+    private final String index;
+
+    private final DateTimeFormatter formatter;
+
+    private final DateTimeFieldType[] fieldTypes;
+
+    private volatile Window window;
+
+    public SyslogIndexNameResolver(String index) {
+        this(index, DateTimeZone.getDefault());
+    }
+
+    public SyslogIndexNameResolver(String index, DateTimeZone zone) {
+        this.index = index;
+        if (index.indexOf('\'') >= 0) {
+            this.formatter = DateTimeFormat.forPattern(index).withZone(zone);
+            this.fieldTypes = fieldTypes(index);
+        } else {
+            this.formatter = null;
+            this.fieldTypes = null;
+        }
+        this.window = new Window(index, Long.MIN_VALUE, formatter != null ? Long.MIN_VALUE : Long.MAX_VALUE);
+    }
+
+    public boolean isTimeWindow() {
+        return formatter != null;
+    }
+
+    public String resolve() {
+        return resolve(System.currentTimeMillis());
+    }
+
+    public String resolve(long millis) {
+        Window w = window;
+        if (millis < w.next && millis >= w.start) {
+            return w.name;
+        }
+        w = window(millis);
+        window = w;
+        return w.name;
+    }
+
+    private Window window(long millis) {
+        DateTime now = new DateTime(millis, formatter.getZone());
+        long start = Long.MIN_VALUE;
+        long next = Long.MAX_VALUE;
+        for (DateTimeFieldType fieldType : fieldTypes) {
+            DateTime floor = now.property(fieldType).roundFloorCopy();
+            start = Math.max(start, floor.getMillis());
+            next = Math.min(next, floor.withFieldAdded(fieldType.getDurationType(), 1).getMillis());
+        }
+        return new Window(formatter.print(now), start, next);
+    }
+
+    /**
+     * Collect the date fields of the pattern letters outside of quoted literals.
+     */
+    private static DateTimeFieldType[] fieldTypes(String pattern) {
+        Set<DateTimeFieldType> set = new LinkedHashSet<>();
+        boolean quoted = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            char ch = pattern.charAt(i);
+            if (ch == '\'') {
+                quoted = !quoted;
+                continue;
+            }
+            if (quoted) {
+                continue;
+            }
+            switch (ch) {
+                case 'G':
+                case 'C':
+                case 'Y':
+                case 'y':
+                    set.add(DateTimeFieldType.year());
+                    break;
+                case 'x':
+                    set.add(DateTimeFieldType.weekyear());
+                    break;
+                case 'w':
+                    set.add(DateTimeFieldType.weekOfWeekyear());
+                    break;
+                case 'M':
+                    set.add(DateTimeFieldType.monthOfYear());
+                    break;
+                case 'D':
+                case 'd':
+                case 'e':
+                case 'E':
+                    set.add(DateTimeFieldType.dayOfMonth());
+                    break;
+                case 'a':
+                case 'K':
+                case 'h':
+                case 'H':
+                case 'k':
+                    set.add(DateTimeFieldType.hourOfDay());
+                    break;
+                case 'm':
+                    set.add(DateTimeFieldType.minuteOfHour());
+                    break;
+                case 's':
+                    set.add(DateTimeFieldType.secondOfMinute());
+                    break;
+                case 'S':
+                    set.add(DateTimeFieldType.millisOfSecond());
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (set.isEmpty()) {
+            set.add(DateTimeFieldType.millisOfSecond());
+        }
+        return set.toArray(new DateTimeFieldType[set.size()]);
+    }
+
+    private static class Window {
+
+        final String name;
+
+        final long start;
+
+        final long next;
+
+        Window(String name, long start, long next) {
+            this.name = name;
+            this.start = start;
+            this.next = next;
+        }
+    }
+}
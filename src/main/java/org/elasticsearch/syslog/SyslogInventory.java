@@ -0,0 +1,262 @@
+package org.elasticsearch.syslog;
+
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentString;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Static attributes of senders, e.g. site, role and owner, keyed by their IPv4 or IPv6 address.
+ *
+ * The addresses are kept in an open-addressing table of two longs per address, IPv4 addresses as
+ * IPv4-mapped IPv6 addresses, with an index into the rows of attribute values. A lookup of an IPv4
+ * sender does not copy the address bytes. Addresses are added before the inventory is used, lookups
+ * are thread safe.
+ */
+public class SyslogInventory {
+
+    private final static long IPV4_MAPPED = 0xffff00000000L;
+
+    private final String[] attributes;
+
+    private final XContentString[] fields;
+
+    private final XContentString name;
+
+    private final long[] highs;
+
+    private final long[] lows;
+
+    private final int[] slots;
+
+    private final int mask;
+
+    private final List<String[]> rows = new ArrayList<>();
+
+    private final CounterMetric matched = new CounterMetric();
+
+    /**
+     * @param name the name of the object the attributes are written to
+     * @param attributes the attribute names
+     * @param capacity the maximum number of addresses
+     */
+    public SyslogInventory(String name, List<String> attributes, int capacity) {
+        this.name = new XContentString(name);
+        this.attributes = attributes.toArray(new String[attributes.size()]);
+        this.fields = new XContentString[this.attributes.length];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = new XContentString(this.attributes[i]);
+        }
+        int tableSize = Integer.highestOneBit(Math.max(16, capacity) * 2 - 1) << 1;
+        this.mask = tableSize - 1;
+        this.highs = new long[tableSize];
+        this.lows = new long[tableSize];
+        this.slots = new int[tableSize];
+    }
+
+    /**
+     * Load an inventory from a CSV file with a header line, the first column being the address, or from
+     * a YAML or JSON file with an object of attribute objects by address. Attributes without value are
+     * left out.
+     *
+     * @param path the file, with the extension {@code csv}, {@code yml}, {@code yaml} or {@code json}
+     * @param name the name of the object the attributes are written to
+     * @throws IOException if the file can not be read
+     * @throws IllegalArgumentException if an address is not an IP address literal
+     */
+    public static SyslogInventory load(Path path, String name) throws IOException {
+        String fileName = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        List<String> attributes = new ArrayList<>();
+        Map<String, String[]> entries = new LinkedHashMap<>();
+        if (fileName.endsWith(".csv")) {
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+                    String[] columns = line.split(",", -1);
+                    if (attributes.isEmpty()) {
+                        for (int i = 1; i < columns.length; i++) {
+                            attributes.add(columns[i].trim());
+                        }
+                        continue;
+                    }
+                    String[] values = new String[attributes.size()];
+                    for (int i = 1; i < columns.length && i <= values.length; i++) {
+                        String value = columns[i].trim();
+                        values[i - 1] = value.isEmpty() ? null : value;
+                    }
+                    entries.put(columns[0].trim(), values);
+                }
+            }
+        } else {
+            Map<String, Object> map;
+            try (InputStream in = Files.newInputStream(path);
+                 XContentParser parser = XContentFactory.xContent(fileName.endsWith(".json") ?
+                         XContentType.JSON : XContentType.YAML).createParser(in)) {
+                map = parser.mapOrdered();
+            }
+            for (Object value : map.values()) {
+                if (value instanceof Map) {
+                    for (Object attribute : ((Map<?, ?>) value).keySet()) {
+                        if (!attributes.contains(attribute.toString())) {
+                            attributes.add(attribute.toString());
+                        }
+                    }
+                }
+            }
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                String[] values = new String[attributes.size()];
+                if (entry.getValue() instanceof Map) {
+                    for (Map.Entry<?, ?> attribute : ((Map<?, ?>) entry.getValue()).entrySet()) {
+                        if (attribute.getValue() != null) {
+                            values[attributes.indexOf(attribute.getKey().toString())] = attribute.getValue().toString();
+                        }
+                    }
+                }
+                entries.put(entry.getKey(), values);
+            }
+        }
+        SyslogInventory inventory = new SyslogInventory(name, attributes, entries.size());
+        for (Map.Entry<String, String[]> entry : entries.entrySet()) {
+            inventory.put(SyslogAddressTrie.parse(entry.getKey()), entry.getValue());
+        }
+        return inventory;
+    }
+
+    public String[] getAttributes() {
+        return attributes;
+    }
+
+    public int size() {
+        return rows.size();
+    }
+
+    public long getMatched() {
+        return matched.count();
+    }
+
+    /**
+     * Add the attribute values of an address.
+     *
+     * @param address the IPv4 or IPv6 address bytes
+     * @param values the values in the order of the attributes, null for no value
+     * @throws IllegalStateException if the inventory is full
+     */
+    public void put(byte[] address, String[] values) {
+        long high;
+        long low;
+        if (address.length == 4) {
+            high = 0L;
+            low = IPV4_MAPPED | (ipv4(address) & 0xffffffffL);
+        } else {
+            high = bits(address, 0);
+            low = bits(address, 8);
+        }
+        int slot = find(high, low);
+        if (slots[slot] == 0) {
+            if (rows.size() >= (mask + 1) / 2) {
+                throw new IllegalStateException("inventory is full");
+            }
+            highs[slot] = high;
+            lows[slot] = low;
+            rows.add(values);
+            slots[slot] = rows.size();
+        } else {
+            rows.set(slots[slot] - 1, values);
+        }
+    }
+
+    /**
+     * The attribute values of a sender, in the order of the attributes.
+     *
+     * @return the values, or null if the sender is not in the inventory
+     */
+    public String[] get(SocketAddress socketAddress) {
+        if (socketAddress instanceof InetSocketAddress) {
+            InetAddress address = ((InetSocketAddress) socketAddress).getAddress();
+            if (address != null) {
+                return get(address);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The attribute values of an address, in the order of the attributes.
+     *
+     * @return the values, or null if the address is not in the inventory
+     */
+    public String[] get(InetAddress address) {
+        int slot;
+        if (address instanceof Inet4Address) {
+            // the hash code of an IPv4 address is the address
+            slot = find(0L, IPV4_MAPPED | (address.hashCode() & 0xffffffffL));
+        } else {
+            byte[] bytes = address.getAddress();
+            slot = find(bits(bytes, 0), bits(bytes, 8));
+        }
+        int row = slots[slot];
+        return row == 0 ? null : rows.get(row - 1);
+    }
+
+    /**
+     * Write the attributes of a sender as an object, if the sender is in the inventory.
+     */
+    public void write(SocketAddress remoteAddress, XContentBuilder builder) throws IOException {
+        String[] values = get(remoteAddress);
+        if (values == null) {
+            return;
+        }
+        matched.inc();
+        builder.generator().writeFieldName(name);
+        builder.startObject();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                builder.generator().writeStringField(fields[i], values[i]);
+            }
+        }
+        builder.endObject();
+    }
+
+    private int find(long high, long low) {
+        long h = (high ^ low) * 0x9e3779b97f4a7c15L;
+        int slot = (int) (h ^ (h >>> 32)) & mask;
+        while (slots[slot] != 0 && (highs[slot] != high || lows[slot] != low)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int ipv4(byte[] address) {
+        return ((address[0] & 0xff) << 24) | ((address[1] & 0xff) << 16) | ((address[2] & 0xff) << 8) | (address[3] & 0xff);
+    }
+
+    private static long bits(byte[] address, int from) {
+        long bits = 0L;
+        for (int i = from; i < from + 8; i++) {
+            bits = (bits << 8) | (address[i] & 0xff);
+        }
+        return bits;
+    }
+}
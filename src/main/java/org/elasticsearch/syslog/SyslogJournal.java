@@ -0,0 +1,441 @@
+package org.elasticsearch.syslog;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of index requests in memory-mapped segment files.
+ *
+ * Index requests are spilled to the journal when the bulk processor can not take them, and read back
+ * in order when bulk capacity returns. Each record is {@code length, crc32, index, type, id, source}.
+ * A segment ends at a zero length or at a record with a bad checksum. The read position is kept in a
+ * checkpoint file, so after a restart replay continues at the last checkpoint; records read after the
+ * checkpoint are replayed twice. Segments are deleted when they have been read completely.
+ *
+ * The counters are updated under the lock of the journal, but read without it, so the parser workers
+ * can check the backlog while the drainer reads or syncs.
+ */
+public class SyslogJournal implements Closeable {
+
+    private final static ESLogger logger = ESLoggerFactory.getLogger(SyslogJournal.class.getName());
+
+    private final static String SEGMENT_PREFIX = "segment-";
+
+    private final static String SEGMENT_SUFFIX = ".journal";
+
+    private final static String CHECKPOINT = "checkpoint";
+
+    private final static int HEADER_SIZE = 8;
+
+    private final static byte[] EMPTY = new byte[0];
+
+    private final Path path;
+
+    private final int segmentSize;
+
+    private final long maxSize;
+
+    private final boolean syncEachAppend;
+
+    private final Deque<Segment> segments = new ArrayDeque<>();
+
+    private final CRC32 crc = new CRC32();
+
+    private Segment writeSegment;
+
+    private Segment readSegment;
+
+    private int readPosition;
+
+    private final AtomicLong appended = new AtomicLong();
+
+    private final AtomicLong replayed = new AtomicLong();
+
+    private final AtomicLong backlog = new AtomicLong();
+
+    private volatile int segmentCount;
+
+    private long nextId;
+
+    private volatile boolean full;
+
+    private boolean closed;
+
+    /**
+     * Open the journal in a directory, recovering existing segments.
+     *
+     * @param path the directory
+     * @param segmentSize the size of a segment file
+     * @param maxSize the maximum size of all segment files
+     * @param syncEachAppend if each append is forced to disk
+     * @throws IOException if the journal can not be opened
+     */
+    public SyslogJournal(Path path, int segmentSize, long maxSize, boolean syncEachAppend) throws IOException {
+        this.path = path;
+        this.segmentSize = segmentSize;
+        this.maxSize = maxSize;
+        this.syncEachAppend = syncEachAppend;
+        Files.createDirectories(path);
+        recover();
+    }
+
+    /**
+     * Append an index request.
+     *
+     * @return false if the journal is full or closed
+     * @throws IOException if the record can not be written
+     * @throws IllegalArgumentException if the record is larger than a segment
+     */
+    public boolean append(String index, String type, BytesReference source) throws IOException {
+        return append(index, type, null, source);
+    }
+
+    /**
+     * Append an index request with a document ID.
+     *
+     * @param id the document ID, or null if the ID is generated by Elasticsearch
+     * @return false if the journal is full or closed
+     * @throws IOException if the record can not be written
+     * @throws IllegalArgumentException if the record is larger than a segment
+     */
+    public synchronized boolean append(String index, String type, String id, BytesReference source) throws IOException {
+        if (closed) {
+            return false;
+        }
+        byte[] indexBytes = index.getBytes(StandardCharsets.UTF_8);
+        byte[] typeBytes = type.getBytes(StandardCharsets.UTF_8);
+        byte[] idBytes = id != null ? id.getBytes(StandardCharsets.UTF_8) : EMPTY;
+        BytesRef sourceBytes = source.toBytesRef();
+        int length = 6 + indexBytes.length + typeBytes.length + idBytes.length + sourceBytes.length;
+        if (HEADER_SIZE + length > segmentSize) {
+            throw new IllegalArgumentException("record of " + (HEADER_SIZE + length)
+                    + " bytes is larger than a journal segment of " + segmentSize + " bytes");
+        }
+        if (writeSegment == null || writeSegment.position + HEADER_SIZE + length > segmentSize) {
+            if ((segments.size() + 1) * (long) segmentSize > maxSize) {
+                full = true;
+                return false;
+            }
+            roll();
+        }
+        crc.reset();
+        crc.update(indexBytes, 0, indexBytes.length);
+        crc.update(typeBytes, 0, typeBytes.length);
+        crc.update(idBytes, 0, idBytes.length);
+        crc.update(sourceBytes.bytes, sourceBytes.offset, sourceBytes.length);
+        ByteBuffer buffer = writeSegment.buffer;
+        int position = writeSegment.position;
+        buffer.position(position + 4);
+        buffer.putInt((int) crc.getValue());
+        buffer.putShort((short) indexBytes.length);
+        buffer.put(indexBytes);
+        buffer.putShort((short) typeBytes.length);
+        buffer.put(typeBytes);
+        buffer.putShort((short) idBytes.length);
+        buffer.put(idBytes);
+        buffer.put(sourceBytes.bytes, sourceBytes.offset, sourceBytes.length);
+        // the length is written last, so a torn record ends the segment
+        buffer.putInt(position, length);
+        writeSegment.position = position + HEADER_SIZE + length;
+        appended.incrementAndGet();
+        backlog.incrementAndGet();
+        if (syncEachAppend) {
+            writeSegment.buffer.force();
+        }
+        return true;
+    }
+
+    /**
+     * Read the next record.
+     *
+     * @return the record, or null if all records have been read
+     * @throws IOException if a segment can not be deleted
+     */
+    public synchronized Record read() throws IOException {
+        while (readSegment != null) {
+            ByteBuffer buffer = readSegment.buffer;
+            int limit = readSegment == writeSegment ? writeSegment.position : readSegment.position;
+            if (readPosition + HEADER_SIZE <= limit) {
+                int length = buffer.getInt(readPosition);
+                if (length > 0 && readPosition + HEADER_SIZE + length <= limit) {
+                    Record record = record(buffer, readPosition, length);
+                    readPosition += HEADER_SIZE + length;
+                    if (backlog.get() > 0L) {
+                        backlog.decrementAndGet();
+                    }
+                    if (record == null) {
+                        continue;
+                    }
+                    replayed.incrementAndGet();
+                    return record;
+                }
+            }
+            if (readSegment == writeSegment) {
+                return null;
+            }
+            // segment completely read
+            Segment done = segments.pollFirst();
+            segmentCount = segments.size();
+            Files.deleteIfExists(done.file);
+            full = false;
+            readSegment = segments.peekFirst();
+            readPosition = 0;
+            checkpoint();
+        }
+        return null;
+    }
+
+    public boolean hasBacklog() {
+        return backlog.get() > 0L;
+    }
+
+    /**
+     * If the last append failed because the journal reached its maximum size.
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    public long getBacklog() {
+        return backlog.get();
+    }
+
+    public long getAppended() {
+        return appended.get();
+    }
+
+    public long getReplayed() {
+        return replayed.get();
+    }
+
+    public int getSegments() {
+        return segmentCount;
+    }
+
+    public long getSizeInBytes() {
+        return segmentCount * (long) segmentSize;
+    }
+
+    /**
+     * Force the written records to disk and write the checkpoint.
+     *
+     * @throws IOException if the checkpoint can not be written
+     */
+    public synchronized void sync() throws IOException {
+        if (closed) {
+            return;
+        }
+        if (writeSegment != null) {
+            writeSegment.buffer.force();
+        }
+        checkpoint();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        sync();
+        closed = true;
+        segments.clear();
+        segmentCount = 0;
+        writeSegment = null;
+        readSegment = null;
+    }
+
+    private void roll() throws IOException {
+        if (writeSegment != null) {
+            writeSegment.buffer.force();
+        }
+        writeSegment = map(nextId++, 0);
+        segments.addLast(writeSegment);
+        segmentCount = segments.size();
+        if (readSegment == null) {
+            readSegment = writeSegment;
+            readPosition = 0;
+        }
+    }
+
+    private Segment map(long id, int position) throws IOException {
+        Path file = path.resolve(SEGMENT_PREFIX + String.format(Locale.ROOT, "%019d", id) + SEGMENT_SUFFIX);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            return new Segment(id, file, buffer, position);
+        }
+    }
+
+    private Record record(ByteBuffer buffer, int position, int length) {
+        ByteBuffer b = buffer.duplicate();
+        b.position(position + 4);
+        int checksum = b.getInt();
+        byte[] index = new byte[b.getShort()];
+        b.get(index);
+        byte[] type = new byte[b.getShort()];
+        b.get(type);
+        byte[] id = new byte[b.getShort()];
+        b.get(id);
+        byte[] source = new byte[length - 6 - index.length - type.length - id.length];
+        b.get(source);
+        crc.reset();
+        crc.update(index, 0, index.length);
+        crc.update(type, 0, type.length);
+        crc.update(id, 0, id.length);
+        crc.update(source, 0, source.length);
+        if ((int) crc.getValue() != checksum) {
+            logger.warn("checksum mismatch in journal segment at position {}, record skipped", position);
+            return null;
+        }
+        return new Record(new String(index, StandardCharsets.UTF_8), new String(type, StandardCharsets.UTF_8),
+                id.length > 0 ? new String(id, StandardCharsets.UTF_8) : null, source);
+    }
+
+    /**
+     * Find the end of the records in a segment.
+     */
+    private int scan(Segment segment, int from) {
+        ByteBuffer buffer = segment.buffer;
+        int position = from;
+        while (position + HEADER_SIZE <= segmentSize) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER_SIZE + length > segmentSize
+                    || record(buffer, position, length) == null) {
+                break;
+            }
+            position += HEADER_SIZE + length;
+            backlog.incrementAndGet();
+        }
+        return position;
+    }
+
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+        long checkpointId = -1L;
+        int checkpointPosition = 0;
+        Path checkpoint = path.resolve(CHECKPOINT);
+        if (Files.exists(checkpoint)) {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(checkpoint));
+            checkpointId = buffer.getLong();
+            checkpointPosition = buffer.getInt();
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long id = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            if (id < checkpointId) {
+                Files.delete(file);
+                continue;
+            }
+            Segment segment = map(id, 0);
+            int from = id == checkpointId ? checkpointPosition : 0;
+            segment.position = scan(segment, from);
+            if (segments.isEmpty()) {
+                readPosition = from;
+            }
+            segments.addLast(segment);
+            segmentCount = segments.size();
+            nextId = id + 1;
+        }
+        nextId = Math.max(nextId, checkpointId);
+        readSegment = segments.peekFirst();
+        writeSegment = segments.peekLast();
+        if (backlog.get() > 0L) {
+            logger.info("recovered {} records in {} journal segments from {}", backlog, segments.size(), path);
+        }
+    }
+
+    private void checkpoint() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(12);
+        buffer.putLong(readSegment != null ? readSegment.id : nextId);
+        buffer.putInt(readSegment != null ? readPosition : 0);
+        Path tmp = path.resolve(CHECKPOINT + ".tmp");
+        Files.write(tmp, buffer.array());
+        Files.move(tmp, path.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * A journal record.
+     */
+    public static class Record {
+
+        private final String index;
+
+        private final String type;
+
+        private final String id;
+
+        private final byte[] source;
+
+        Record(String index, String type, String id, byte[] source) {
+            this.index = index;
+            this.type = type;
+            this.id = id;
+            this.source = source;
+        }
+
+        public String getIndex() {
+            return index;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * The document ID, or null.
+         */
+        public String getId() {
+            return id;
+        }
+
+        public byte[] getSource() {
+            return source;
+        }
+    }
+
+    private static class Segment {
+
+        final long id;
+
+        final Path file;
+
+        final MappedByteBuffer buffer;
+
+        int position;
+
+        Segment(long id, Path file, MappedByteBuffer buffer, int position) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+            this.position = position;
+        }
+    }
+}
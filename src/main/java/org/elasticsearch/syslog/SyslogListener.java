@@ -0,0 +1,98 @@
+package org.elasticsearch.syslog;
+
+import org.elasticsearch.common.syslog.MessageParser;
+import org.jboss.netty.channel.Channel;
+
+
+/**
+ * A named syslog listener, with its own address, protocols, target index and parser configuration.
+ *
+ * All listeners share the workers and the bulk processor of the syslog service. The listener configured
+ * by the top level settings has an empty name.
+ */
+public class SyslogListener {
+
+    private final String name;
+
+    private final String host;
+
+    private final String port;
+
+    private final boolean udp;
+
+    private final boolean tcp;
+
+    private final String index;
+
+    private final String type;
+
+    private final SyslogIndexNameResolver indexNameResolver;
+
+    private final MessageParser messageParser;
+
+    private final SyslogStats.ListenerStats udpStats;
+
+    private final SyslogStats.ListenerStats tcpStats;
+
+    volatile SyslogDatagramReceiver udpReceiver;
+
+    Channel tcpChannel;
+
+    public SyslogListener(String name, String host, String port, boolean udp, boolean tcp, String index, String type,
+                          MessageParser messageParser, SyslogStats stats) {
+        this.name = name;
+        this.host = host;
+        this.port = port;
+        this.udp = udp;
+        this.tcp = tcp;
+        this.index = index;
+        this.type = type;
+        this.indexNameResolver = new SyslogIndexNameResolver(index);
+        this.messageParser = messageParser;
+        this.udpStats = udp ? stats.listener(name.isEmpty() ? "udp" : name + ".udp") : null;
+        this.tcpStats = tcp ? stats.listener(name.isEmpty() ? "tcp" : name + ".tcp") : null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public String getPort() {
+        return port;
+    }
+
+    public boolean isUdp() {
+        return udp;
+    }
+
+    public boolean isTcp() {
+        return tcp;
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public SyslogIndexNameResolver getIndexNameResolver() {
+        return indexNameResolver;
+    }
+
+    public MessageParser getMessageParser() {
+        return messageParser;
+    }
+
+    /**
+     * The statistics of a protocol of this listener.
+     */
+    public SyslogStats.ListenerStats stats(String protocol) {
+        return "udp".equals(protocol) ? udpStats : tcpStats;
+    }
+}
@@ -0,0 +1,353 @@
+package org.elasticsearch.syslog;
+
+import com.carrotsearch.hppc.LongObjectHashMap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+/**
+ * Joins the lines of multi-line events, e.g. stack traces, which are sent as one syslog message per line.
+ *
+ * Messages are grouped into streams by sender, host and program. A message is a continuation line if its
+ * text matches the continuation pattern, or does not match the start pattern. A continuation line is
+ * appended to the open event of its stream, any other message flushes the open event and opens a new one.
+ * The event is the first message, with the text of the continuation lines appended on new lines.
+ *
+ * Events are flushed when they reach the maximum number of lines or bytes, or when no line has been added
+ * for the timeout. The deadlines are kept in a hashed timer wheel, so a line costs a constant number of
+ * operations. The number of open events is bounded, if the limit is reached, messages that would open a new
+ * event are passed through. Not thread safe, each worker has its own instance.
+ */
+public class SyslogMultiline {
+
+    private final static long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private final static long FNV_PRIME = 0x100000001b3L;
+
+    private final Pattern start;
+
+    private final Pattern continuation;
+
+    private final long timeoutMillis;
+
+    private final int maxLines;
+
+    private final int maxBytes;
+
+    private final int maxStreams;
+
+    private final LongObjectHashMap<Event> events = new LongObjectHashMap<>();
+
+    private final Event[] wheel;
+
+    private final int wheelMask;
+
+    private final long tickMillis;
+
+    private long tick = -1L;
+
+    /**
+     * @param start the pattern of the first line of an event, or null
+     * @param continuation the pattern of the continuation lines, or null
+     * @param timeoutMillis the time after the last line of an event until it is flushed
+     * @param maxLines the maximum number of lines of an event
+     * @param maxBytes the maximum size of an event in bytes
+     * @param maxStreams the maximum number of open events
+     */
+    public SyslogMultiline(Pattern start, Pattern continuation, long timeoutMillis, int maxLines, int maxBytes,
+                           int maxStreams) {
+        if (start == null && continuation == null) {
+            throw new IllegalArgumentException("multi-line aggregation needs a start or a continuation pattern");
+        }
+        this.start = start;
+        this.continuation = continuation;
+        this.timeoutMillis = timeoutMillis;
+        this.maxLines = maxLines;
+        this.maxBytes = maxBytes;
+        this.maxStreams = maxStreams;
+        // about 16 ticks per timeout, and a wheel that covers the timeout in one round
+        this.tickMillis = Math.max(1L, timeoutMillis / 16);
+        int slots = Integer.highestOneBit((int) Math.min(1 << 16, timeoutMillis / tickMillis + 2) * 2 - 1);
+        this.wheel = new Event[slots];
+        this.wheelMask = slots - 1;
+    }
+
+    /**
+     * Offer a message.
+     *
+     * @param remoteAddress the sender
+     * @param buffer the message, not consumed
+     * @param context the context of the message, passed to the listener with the event it opens
+     * @param now the current time in milliseconds
+     * @param listener receives the flushed events
+     * @return true if the message was taken, false if it should be processed on its own
+     */
+    public boolean offer(SocketAddress remoteAddress, ChannelBuffer buffer, Object context, long now, Listener listener) {
+        expire(now, listener);
+        int[] header = header(buffer);
+        if (header == null) {
+            return false;
+        }
+        long key = key(remoteAddress, buffer, header);
+        int textStart = header[4];
+        String text = buffer.toString(textStart, buffer.writerIndex() - textStart, StandardCharsets.UTF_8);
+        Event event = events.get(key);
+        if (isContinuation(text)) {
+            if (event == null) {
+                return false;
+            }
+            event.buffer.writeByte('\n');
+            event.buffer.writeBytes(buffer, textStart, buffer.writerIndex() - textStart);
+            event.lines++;
+            if (event.lines >= maxLines || event.buffer.readableBytes() >= maxBytes) {
+                flush(event, listener);
+            } else {
+                schedule(event, now + timeoutMillis);
+            }
+            return true;
+        }
+        if (event != null) {
+            flush(event, listener);
+        } else if (events.size() >= maxStreams) {
+            return false;
+        }
+        event = new Event(key, context, buffer.readableBytes());
+        event.buffer.writeBytes(buffer, buffer.readerIndex(), buffer.readableBytes());
+        events.put(key, event);
+        schedule(event, now + timeoutMillis);
+        return true;
+    }
+
+    /**
+     * Flush the events whose timeout has passed.
+     *
+     * @param now the current time in milliseconds, or {@code Long.MAX_VALUE} to flush all events
+     */
+    public void expire(long now, Listener listener) {
+        if (now == Long.MAX_VALUE) {
+            for (int i = 0; i < wheel.length; i++) {
+                while (wheel[i] != null) {
+                    flush(wheel[i], listener);
+                }
+            }
+            return;
+        }
+        long current = now / tickMillis;
+        if (tick < 0L) {
+            tick = current;
+            return;
+        }
+        // visit each slot at most once, even after a long pause
+        long from = Math.max(tick + 1, current - wheelMask);
+        for (long t = from; t <= current; t++) {
+            Event event = wheel[(int) t & wheelMask];
+            while (event != null) {
+                Event next = event.next;
+                if (event.deadline <= now) {
+                    flush(event, listener);
+                }
+                event = next;
+            }
+        }
+        tick = current;
+    }
+
+    public int size() {
+        return events.size();
+    }
+
+    private boolean isContinuation(String text) {
+        if (start != null && start.matcher(text).lookingAt()) {
+            return false;
+        }
+        return continuation == null || continuation.matcher(text).lookingAt();
+    }
+
+    private void schedule(Event event, long deadline) {
+        unlink(event);
+        event.deadline = deadline;
+        int slot = (int) ((deadline + tickMillis - 1) / tickMillis) & wheelMask;
+        event.slot = slot;
+        event.next = wheel[slot];
+        if (wheel[slot] != null) {
+            wheel[slot].prev = event;
+        }
+        wheel[slot] = event;
+    }
+
+    private void unlink(Event event) {
+        if (event.slot < 0) {
+            return;
+        }
+        if (event.prev != null) {
+            event.prev.next = event.next;
+        } else {
+            wheel[event.slot] = event.next;
+        }
+        if (event.next != null) {
+            event.next.prev = event.prev;
+        }
+        event.prev = null;
+        event.next = null;
+        event.slot = -1;
+    }
+
+    private void flush(Event event, Listener listener) {
+        unlink(event);
+        events.remove(event.key);
+        listener.event(event.context, event.buffer, event.lines);
+    }
+
+    /**
+     * Scans the header of a message.
+     *
+     * @return the start and end of the host, the start and end of the program, and the start of the text,
+     * or null if the message has no host
+     */
+    static int[] header(ChannelBuffer buffer) {
+        int pos = buffer.readerIndex();
+        int limit = buffer.writerIndex();
+        if (pos < limit && buffer.getByte(pos) == '<') {
+            pos = buffer.indexOf(pos, limit, (byte) '>');
+            if (pos < 0) {
+                return null;
+            }
+            pos++;
+        }
+        boolean rfc5424 = false;
+        if (pos + 2 < limit && buffer.getByte(pos) == '1' && buffer.getByte(pos + 1) == ' ') {
+            rfc5424 = true;
+            pos = token(buffer, pos + 2, limit);
+        } else if (pos + 15 < limit && buffer.getByte(pos + 3) == ' ' && buffer.getByte(pos + 6) == ' '
+                && buffer.getByte(pos + 9) == ':' && buffer.getByte(pos + 12) == ':') {
+            pos += 16;
+        } else {
+            pos = token(buffer, pos, limit);
+        }
+        int hostStart = pos;
+        int hostEnd = end(buffer, pos, limit);
+        if (hostEnd == limit) {
+            return null;
+        }
+        pos = hostEnd + 1;
+        int programStart = pos;
+        int programEnd;
+        if (rfc5424) {
+            // APP-NAME PROCID MSGID STRUCTURED-DATA MSG
+            programEnd = end(buffer, pos, limit);
+            pos = token(buffer, token(buffer, token(buffer, pos, limit), limit), limit);
+            pos = skipStructuredData(buffer, pos, limit);
+            if (pos < limit && buffer.getByte(pos) == ' ') {
+                pos++;
+            }
+            if (pos + 3 <= limit && buffer.getByte(pos) == (byte) 0xef && buffer.getByte(pos + 1) == (byte) 0xbb
+                    && buffer.getByte(pos + 2) == (byte) 0xbf) {
+                // the byte order mark of a UTF-8 message
+                pos += 3;
+            }
+        } else {
+            // TAG, e.g. su: or sshd[123]:
+            programEnd = pos;
+            while (programEnd < limit) {
+                byte b = buffer.getByte(programEnd);
+                if (b == '[' || b == ':' || b == ' ') {
+                    break;
+                }
+                programEnd++;
+            }
+            int colon = buffer.indexOf(programEnd, Math.min(limit, programEnd + 12), (byte) ':');
+            if (colon >= 0 && colon + 1 < limit && buffer.getByte(colon + 1) == ' ') {
+                pos = colon + 2;
+            } else {
+                programEnd = programStart;
+            }
+        }
+        return new int[] { hostStart, hostEnd, programStart, programEnd, Math.min(pos, limit) };
+    }
+
+    private static int end(ChannelBuffer buffer, int pos, int limit) {
+        int end = buffer.indexOf(pos, limit, (byte) ' ');
+        return end < 0 ? limit : end;
+    }
+
+    private static int token(ChannelBuffer buffer, int pos, int limit) {
+        int end = end(buffer, pos, limit);
+        return end < limit ? end + 1 : limit;
+    }
+
+    private static int skipStructuredData(ChannelBuffer buffer, int pos, int limit) {
+        if (pos >= limit || buffer.getByte(pos) != '[') {
+            return pos < limit ? pos + 1 : limit;
+        }
+        boolean quoted = false;
+        while (pos < limit) {
+            byte b = buffer.getByte(pos);
+            if (quoted) {
+                if (b == '\\') {
+                    pos++;
+                } else if (b == '"') {
+                    quoted = false;
+                }
+            } else if (b == '"') {
+                quoted = true;
+            } else if (b == ' ' && buffer.getByte(pos - 1) == ']') {
+                return pos;
+            }
+            pos++;
+        }
+        return limit;
+    }
+
+    private static long key(SocketAddress remoteAddress, ChannelBuffer buffer, int[] header) {
+        long h = FNV_OFFSET ^ (remoteAddress != null ? remoteAddress.hashCode() : 0);
+        for (int i = header[0]; i < header[1]; i++) {
+            h = (h ^ buffer.getByte(i)) * FNV_PRIME;
+        }
+        h = (h ^ ' ') * FNV_PRIME;
+        for (int i = header[2]; i < header[3]; i++) {
+            h = (h ^ buffer.getByte(i)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    private static class Event {
+
+        private final long key;
+
+        private final Object context;
+
+        private final ChannelBuffer buffer;
+
+        private int lines = 1;
+
+        private long deadline;
+
+        private int slot = -1;
+
+        private Event prev;
+
+        private Event next;
+
+        Event(long key, Object context, int size) {
+            this.key = key;
+            this.context = context;
+            this.buffer = ChannelBuffers.dynamicBuffer(Math.max(256, size * 4));
+        }
+    }
+
+    /**
+     * Receives the flushed events.
+     */
+    public interface Listener {
+
+        /**
+         * @param context the context of the first message
+         * @param event the first message with the appended lines
+         * @param lines the number of lines
+         */
+        void event(Object context, ChannelBuffer event, int lines);
+    }
+}
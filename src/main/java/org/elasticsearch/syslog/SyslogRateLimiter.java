@@ -0,0 +1,293 @@
+package org.elasticsearch.syslog;
+
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.syslog.Facility;
+import org.elasticsearch.common.syslog.MessageParser;
+import org.elasticsearch.common.syslog.Severity;
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Rate limits and samples messages before they are parsed.
+ *
+ * A rule matches messages by facility, severity and host, and keeps them with a sampling probability and
+ * a token bucket rate. The buckets are keyed by the remote address, the host, the facility or the severity
+ * of a message, or shared by all messages of the rule. Only the priority, and the host if a rule needs it,
+ * are decoded, so shed messages cost almost nothing.
+ *
+ * Buckets are kept in a fixed number of stripes per rule, keys with the same stripe share a bucket.
+ * A bucket is a single long, the theoretical arrival time of the generic cell rate algorithm, updated by
+ * compare-and-set, so acquiring never takes a lock. Stripes are padded to their own cache line.
+ * Rules are evaluated in order, a message is shed by the first rule that drops it.
+ */
+public class SyslogRateLimiter {
+
+    private final static int PADDING = 8;
+
+    private final static long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private final static long FNV_PRIME = 0x100000001b3L;
+
+    private final Rule[] rules;
+
+    private final boolean needsHost;
+
+    private final long origin = System.nanoTime();
+
+    public SyslogRateLimiter(List<Rule> rules) {
+        this.rules = rules.toArray(new Rule[rules.size()]);
+        boolean needsHost = false;
+        for (Rule rule : rules) {
+            needsHost |= rule.key == Key.HOST || rule.hosts != null;
+        }
+        this.needsHost = needsHost;
+    }
+
+    public Rule[] getRules() {
+        return rules;
+    }
+
+    /**
+     * Decide if a message is kept.
+     *
+     * @param remoteAddress the sender
+     * @param buffer the message, not consumed
+     * @return false if the message should be shed
+     */
+    public boolean acquire(SocketAddress remoteAddress, ChannelBuffer buffer) {
+        return acquire(remoteAddress, buffer, System.nanoTime() - origin);
+    }
+
+    /**
+     * Decide if a message is kept, at the given time in nanoseconds since the limiter was created.
+     */
+    public boolean acquire(SocketAddress remoteAddress, ChannelBuffer buffer, long nanos) {
+        int pri = MessageParser.parsePriority(buffer);
+        long host = needsHost && pri >= 0 ? host(buffer) : -1L;
+        for (Rule rule : rules) {
+            if (!rule.matches(pri, buffer, host)) {
+                continue;
+            }
+            if (rule.sample < 1.0d && ThreadLocalRandom.current().nextDouble() >= rule.sample) {
+                rule.sampledOut.inc();
+                return false;
+            }
+            if (rule.intervalNanos > 0L && !rule.tryAcquire(key(rule.key, pri, remoteAddress, buffer, host), nanos)) {
+                rule.limited.inc();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long key(Key key, int pri, SocketAddress remoteAddress, ChannelBuffer buffer, long host) {
+        switch (key) {
+            case REMOTE:
+                if (remoteAddress instanceof InetSocketAddress && ((InetSocketAddress) remoteAddress).getAddress() != null) {
+                    return ((InetSocketAddress) remoteAddress).getAddress().hashCode();
+                }
+                return remoteAddress != null ? remoteAddress.hashCode() : -1L;
+            case HOST:
+                if (host < 0L) {
+                    return -1L;
+                }
+                long h = FNV_OFFSET;
+                for (int i = (int) (host >>> 32); i < (int) host; i++) {
+                    h = (h ^ buffer.getByte(i)) * FNV_PRIME;
+                }
+                return h;
+            case FACILITY:
+                return pri >= 0 ? pri / 8 : -1L;
+            case SEVERITY:
+                return pri >= 0 ? pri % 8 : -1L;
+            default:
+                return 0L;
+        }
+    }
+
+    /**
+     * Find the host of a message with a valid priority, like the message parser does.
+     *
+     * @return the start index in the high and the end index in the low 32 bits, or -1 if there is no host
+     */
+    static long host(ChannelBuffer buffer) {
+        int limit = buffer.writerIndex();
+        int pos = buffer.indexOf(buffer.readerIndex(), limit, (byte) '>') + 1;
+        if (limit > pos + 2 && buffer.getByte(pos) == '1' && buffer.getByte(pos + 1) == ' ') {
+            pos += 2;
+        }
+        if (pos >= limit) {
+            return -1L;
+        }
+        byte b = buffer.getByte(pos);
+        if (b == '-') {
+            pos += 2;
+        } else if (b >= 'A' && b <= 'Z') {
+            pos += 16;
+        } else {
+            int sp = buffer.indexOf(pos, limit, (byte) ' ');
+            if (sp < 0) {
+                return -1L;
+            }
+            pos = sp + 1;
+        }
+        if (pos >= limit) {
+            return -1L;
+        }
+        int end = buffer.indexOf(pos, limit, (byte) ' ');
+        if (end < 0) {
+            return -1L;
+        }
+        return ((long) pos << 32) | end;
+    }
+
+    /**
+     * What the buckets of a rule are keyed by.
+     */
+    public enum Key {
+        NONE, REMOTE, HOST, FACILITY, SEVERITY;
+
+        public static Key fromString(String key) {
+            return valueOf(key.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * A rate limiting and sampling rule.
+     */
+    public static class Rule {
+
+        private final String name;
+
+        private final Key key;
+
+        private final int facilities;
+
+        private final int severities;
+
+        private final byte[][] hosts;
+
+        private final double sample;
+
+        private final long intervalNanos;
+
+        private final long toleranceNanos;
+
+        private final int stripeMask;
+
+        private final AtomicLongArray buckets;
+
+        private final CounterMetric limited = new CounterMetric();
+
+        private final CounterMetric sampledOut = new CounterMetric();
+
+        /**
+         * @param name the name of the rule
+         * @param key what the buckets are keyed by
+         * @param facilities the facilities of the matching messages, empty for all
+         * @param severities the severities of the matching messages, empty for all
+         * @param hosts the hosts of the matching messages, empty for all
+         * @param rate the messages per second of a bucket, 0 for no limit
+         * @param burst the number of messages a bucket may exceed the rate with
+         * @param sample the probability a matching message is kept
+         * @param stripes the number of buckets
+         */
+        public Rule(String name, Key key, Collection<Facility> facilities, Collection<Severity> severities,
+                    Collection<String> hosts, double rate, int burst, double sample, int stripes) {
+            this.name = name;
+            this.key = key;
+            int facilityMask = 0;
+            for (Facility facility : facilities) {
+                facilityMask |= 1 << facility.numericalCode();
+            }
+            this.facilities = facilityMask;
+            int severityMask = 0;
+            for (Severity severity : severities) {
+                severityMask |= 1 << severity.numericalCode();
+            }
+            this.severities = severityMask;
+            if (hosts.isEmpty()) {
+                this.hosts = null;
+            } else {
+                this.hosts = new byte[hosts.size()][];
+                int i = 0;
+                for (String host : hosts) {
+                    this.hosts[i++] = host.getBytes(StandardCharsets.UTF_8);
+                }
+            }
+            this.sample = sample;
+            this.intervalNanos = rate > 0.0d ? Math.max(1L, (long) (1.0e9d / rate)) : 0L;
+            this.toleranceNanos = intervalNanos * Math.max(0, burst - 1);
+            int size = key == Key.NONE ? 1 : Integer.highestOneBit(Math.max(1, stripes) * 2 - 1);
+            this.stripeMask = size - 1;
+            this.buckets = intervalNanos > 0L ? new AtomicLongArray(size * PADDING) : null;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getLimited() {
+            return limited.count();
+        }
+
+        public long getSampledOut() {
+            return sampledOut.count();
+        }
+
+        boolean matches(int pri, ChannelBuffer buffer, long host) {
+            if (facilities != 0 && (pri < 0 || (facilities & (1 << (pri / 8))) == 0)) {
+                return false;
+            }
+            if (severities != 0 && (pri < 0 || (severities & (1 << (pri % 8))) == 0)) {
+                return false;
+            }
+            if (hosts != null) {
+                if (host < 0L) {
+                    return false;
+                }
+                int start = (int) (host >>> 32);
+                int length = (int) host - start;
+                for (byte[] candidate : hosts) {
+                    if (candidate.length == length && equals(candidate, buffer, start)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            return true;
+        }
+
+        private static boolean equals(byte[] candidate, ChannelBuffer buffer, int start) {
+            for (int i = 0; i < candidate.length; i++) {
+                if (candidate[i] != buffer.getByte(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean tryAcquire(long key, long nanos) {
+            long h = key * 0x9e3779b97f4a7c15L;
+            int slot = ((int) (h ^ (h >>> 32)) & stripeMask) * PADDING;
+            while (true) {
+                long tat = buckets.get(slot);
+                long base = Math.max(tat, nanos);
+                if (base - nanos > toleranceNanos) {
+                    return false;
+                }
+                if (buckets.compareAndSet(slot, tat, base + intervalNanos)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
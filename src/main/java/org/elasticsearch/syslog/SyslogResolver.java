@@ -0,0 +1,216 @@
+package org.elasticsearch.syslog;
+
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.elasticsearch.common.metrics.CounterMetric;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Resolves sender addresses to host names by reverse DNS, without ever waiting for a lookup.
+ *
+ * Host names are kept in a bounded cache with a time to live. A miss, or an expired entry, returns what
+ * is cached, possibly nothing, and submits the lookup to an executor. While a lookup is pending, the
+ * address is not looked up again. Failed lookups are cached too, with a shorter time to live. If the
+ * cache is full, new addresses are not cached until a sweep on the executor has removed expired entries,
+ * or, if that is not enough, arbitrary ones.
+ */
+public class SyslogResolver {
+
+    private final static ESLogger logger = ESLoggerFactory.getLogger(SyslogResolver.class.getName());
+
+    private final ConcurrentMap<InetAddress, Entry> cache = new ConcurrentHashMap<>();
+
+    private final Executor executor;
+
+    private final long ttlMillis;
+
+    private final long failureTtlMillis;
+
+    private final int maxSize;
+
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    private final CounterMetric hits = new CounterMetric();
+
+    private final CounterMetric misses = new CounterMetric();
+
+    private final CounterMetric resolved = new CounterMetric();
+
+    private final CounterMetric failures = new CounterMetric();
+
+    private final CounterMetric rejected = new CounterMetric();
+
+    /**
+     * @param executor the executor for the lookups, should be bounded
+     * @param ttlMillis the time to live of a resolved host name
+     * @param failureTtlMillis the time to live of a failed lookup
+     * @param maxSize the maximum number of cached addresses
+     */
+    public SyslogResolver(Executor executor, long ttlMillis, long failureTtlMillis, int maxSize) {
+        this.executor = executor;
+        this.ttlMillis = ttlMillis;
+        this.failureTtlMillis = failureTtlMillis;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * The host name of a sender, if it is cached.
+     *
+     * @return the host name, or null if the sender is not resolved yet or has no host name
+     */
+    public String get(SocketAddress socketAddress, long now) {
+        if (socketAddress instanceof InetSocketAddress) {
+            InetAddress address = ((InetSocketAddress) socketAddress).getAddress();
+            if (address != null) {
+                return get(address, now);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The host name of an address, if it is cached.
+     *
+     * @return the host name, or null if the address is not resolved yet or has no host name
+     */
+    public String get(InetAddress address, long now) {
+        Entry entry = cache.get(address);
+        if (entry != null && now < entry.expires) {
+            hits.inc();
+            return entry.host;
+        }
+        misses.inc();
+        // the pending entry serves the old host name until the lookup is done
+        Entry pending = new Entry(entry != null ? entry.host : null, now + failureTtlMillis);
+        if (entry == null) {
+            if (cache.size() >= maxSize) {
+                sweep(now);
+                return null;
+            }
+            if (cache.putIfAbsent(address, pending) != null) {
+                return null;
+            }
+        } else if (!cache.replace(address, entry, pending)) {
+            return entry.host;
+        }
+        lookup(address);
+        return pending.host;
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long getHits() {
+        return hits.count();
+    }
+
+    public long getMisses() {
+        return misses.count();
+    }
+
+    public long getResolved() {
+        return resolved.count();
+    }
+
+    public long getFailures() {
+        return failures.count();
+    }
+
+    public long getRejected() {
+        return rejected.count();
+    }
+
+    /**
+     * Look up the host name of an address, blocking. Overridden in tests.
+     *
+     * @return the host name, or null if the address has no host name
+     */
+    protected String resolve(InetAddress address) throws UnknownHostException {
+        // a new address without the host name it may have been created with
+        InetAddress unresolved = InetAddress.getByAddress(address.getAddress());
+        String host = unresolved.getCanonicalHostName();
+        return host.equals(unresolved.getHostAddress()) ? null : host;
+    }
+
+    private void lookup(final InetAddress address) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    String host = null;
+                    try {
+                        host = resolve(address);
+                    } catch (Exception e) {
+                        logger.trace("failed to resolve {}", e, address);
+                    }
+                    long now = System.currentTimeMillis();
+                    if (host != null) {
+                        resolved.inc();
+                        cache.put(address, new Entry(host, now + ttlMillis));
+                    } else {
+                        failures.inc();
+                        cache.put(address, new Entry(null, now + failureTtlMillis));
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.inc();
+            cache.remove(address);
+        }
+    }
+
+    private void sweep(final long now) {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Iterator<Entry> it = cache.values().iterator();
+                        while (it.hasNext()) {
+                            if (now >= it.next().expires) {
+                                it.remove();
+                            }
+                        }
+                        // evict arbitrary entries down to three quarters of the maximum size
+                        it = cache.values().iterator();
+                        while (cache.size() > maxSize - maxSize / 4 && it.hasNext()) {
+                            it.next();
+                            it.remove();
+                        }
+                    } finally {
+                        sweeping.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.inc();
+            sweeping.set(false);
+        }
+    }
+
+    private static class Entry {
+
+        private final String host;
+
+        private final long expires;
+
+        Entry(String host, long expires) {
+            this.host = host;
+            this.expires = expires;
+        }
+    }
+}
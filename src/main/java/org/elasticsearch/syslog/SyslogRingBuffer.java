@@ -0,0 +1,100 @@
+package org.elasticsearch.syslog;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import java.net.SocketAddress;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free ring buffer of syslog frames for many producers and a single consumer.
+ *
+ * Producers claim a slot by a compare-and-set on the tail sequence and publish it by advancing
+ * the slot sequence, so the I/O threads never take a lock. The slots are preallocated,
+ * the consumer processes a frame in place and releases the slot afterwards.
+ */
+public class SyslogRingBuffer {
+
+    private final SyslogFrame[] frames;
+
+    private final AtomicLongArray sequences;
+
+    private final int mask;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    private final AtomicLong head = new AtomicLong();
+
+    public SyslogRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.frames = new SyslogFrame[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            frames[i] = new SyslogFrame();
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+    }
+
+    public int capacity() {
+        return frames.length;
+    }
+
+    /**
+     * Add a frame.
+     *
+     * @return false if the ring buffer is full
+     */
+    public boolean offer(SyslogListener listener, String protocol, SocketAddress localAddress, SocketAddress remoteAddress,
+                         ChannelBuffer buffer) {
+        long pos;
+        int index;
+        while (true) {
+            pos = tail.get();
+            index = (int) pos & mask;
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+        }
+        frames[index].set(listener, protocol, localAddress, remoteAddress, buffer);
+        sequences.lazySet(index, pos + 1);
+        return true;
+    }
+
+    /**
+     * The next frame for the consumer, which must call {@link #release()} after processing.
+     *
+     * @return the frame or null if the ring buffer is empty
+     */
+    public SyslogFrame peek() {
+        long pos = head.get();
+        int index = (int) pos & mask;
+        if (sequences.get(index) != pos + 1) {
+            return null;
+        }
+        return frames[index];
+    }
+
+    /**
+     * Release the frame returned by the last {@link #peek()} for reuse by the producers.
+     */
+    public void release() {
+        long pos = head.get();
+        int index = (int) pos & mask;
+        frames[index].clear();
+        sequences.lazySet(index, pos + frames.length);
+        head.lazySet(pos + 1);
+    }
+
+    /**
+     * Number of frames waiting, an estimate if producers are active.
+     */
+    public long size() {
+        return Math.max(0L, tail.get() - head.get());
+    }
+}
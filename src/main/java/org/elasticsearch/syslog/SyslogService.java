@@ -1,48 +1,79 @@
 package org.elasticsearch.syslog;
 
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.Action;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkProcessor;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.client.Client;
-import org.elasticsearch.common.bytes.ChannelBufferBytesReference;
+import org.elasticsearch.client.FilterClient;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.syslog.Facility;
 import org.elasticsearch.common.syslog.MessageParser;
+import org.elasticsearch.common.syslog.PatternExtractor;
+import org.elasticsearch.common.syslog.Severity;
 import org.elasticsearch.common.transport.PortsRange;
 import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentBuilder;
-import org.jboss.netty.bootstrap.ConnectionlessBootstrap;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentString;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.env.NodeEnvironment;
+import org.elasticsearch.rest.RestStatus;
 import org.jboss.netty.bootstrap.ServerBootstrap;
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.AdaptiveReceiveBufferSizePredictorFactory;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.ExceptionEvent;
-import org.jboss.netty.channel.FixedReceiveBufferSizePredictorFactory;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.ReceiveBufferSizePredictorFactory;
 import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
-import org.jboss.netty.channel.socket.nio.NioDatagramChannelFactory;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.jboss.netty.channel.socket.nio.NioServerBossPool;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
-import org.joda.time.DateTime;
-import org.joda.time.format.DateTimeFormat;
-import org.joda.time.format.DateTimeFormatter;
+import org.jboss.netty.channel.socket.nio.NioWorkerPool;
+import org.jboss.netty.util.ThreadNameDeterminer;
 
 import java.io.IOException;
 import java.net.BindException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.Executors;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
@@ -72,8 +103,112 @@ public class SyslogService extends AbstractLifecycleComponent<SyslogService> {
 
     private final static String SYSLOG_FIELD_NAMES = "field_names";
 
+    private final static String SYSLOG_LISTENERS = "syslog.listeners";
+
+    private final static String SYSLOG_JSON_STREAMING = "syslog.json_streaming";
+
+    private final static String SYSLOG_SOURCE_FORMAT = "syslog.source_format";
+
+    private final static String SYSLOG_DOCUMENT_ID = "syslog.document_id";
+
+    private final static String SYSLOG_TCP_MAX_FRAME_SIZE = "syslog.tcp.max_frame_size";
+
+    private final static String SYSLOG_UDP_MAX_DATAGRAMS_PER_READ = "syslog.udp.max_datagrams_per_read";
+
+    private final static String SYSLOG_WORKERS = "syslog.workers";
+
+    private final static String PREFIX_THREADPOOL = "threadpool.";
+
+    private final static String SYSLOG_QUEUE_SIZE = "syslog.queue_size";
+
+    private final static String SYSLOG_BACKPRESSURE_HIGH_WATERMARK_BYTES = "syslog.backpressure.high_watermark_bytes";
+
+    private final static String SYSLOG_BACKPRESSURE_LOW_WATERMARK_BYTES = "syslog.backpressure.low_watermark_bytes";
+
+    private final static String SYSLOG_BACKPRESSURE_HIGH_WATERMARK_ACTIONS = "syslog.backpressure.high_watermark_actions";
+
+    private final static String SYSLOG_BACKPRESSURE_LOW_WATERMARK_ACTIONS = "syslog.backpressure.low_watermark_actions";
+
+    private final static String SYSLOG_BACKPRESSURE_SHED_SEVERITY = "syslog.backpressure.shed_severity";
+
+    private final static String SYSLOG_BULK_RETRY_INITIAL_DELAY = "syslog.bulk.retry.initial_delay";
+
+    private final static String SYSLOG_BULK_RETRY_MAX_DELAY = "syslog.bulk.retry.max_delay";
+
+    private final static String SYSLOG_BULK_RETRY_MAX_RETRIES = "syslog.bulk.retry.max_retries";
+
+    private final static String SYSLOG_BULK_RETRY_BUDGET = "syslog.bulk.retry.budget";
+
+    private final static String SYSLOG_DEAD_LETTER_INDEX = "syslog.dead_letter.index";
+
+    private final static String DEAD_LETTER = "syslog.dead_letter";
+
+    private final static String DEAD_LETTER_TYPE = "dead_letter";
+
+    private final static XContentString PROTOCOL_FIELD = new XContentString("protocol");
+
+    private final static XContentString LOCAL_FIELD = new XContentString("local");
+
+    private final static XContentString REMOTE_FIELD = new XContentString("remote");
+
+    private final static XContentString REMOTE_HOST_FIELD = new XContentString("remote_host");
+
+    private final static int MAX_CACHED_ADDRESSES = 4096;
+
+    private final static String SYSLOG_FILTER_RULES = "syslog.filter.rules";
+
+    private final static String SYSLOG_RATE_LIMIT_RULES = "syslog.rate_limit.rules";
+
+    private final static String SYSLOG_RATE_LIMIT_STRIPES = "syslog.rate_limit.stripes";
+
+    private final static String SYSLOG_DEDUP_ENABLED = "syslog.dedup.enabled";
+
+    private final static String SYSLOG_DEDUP_WINDOW = "syslog.dedup.window";
+
+    private final static String SYSLOG_DEDUP_SIZE = "syslog.dedup.size";
+
+    private final static String SYSLOG_MULTILINE_START = "syslog.multiline.start";
+
+    private final static String SYSLOG_MULTILINE_CONTINUATION = "syslog.multiline.continuation";
+
+    private final static String SYSLOG_MULTILINE_TIMEOUT = "syslog.multiline.timeout";
+
+    private final static String SYSLOG_MULTILINE_MAX_LINES = "syslog.multiline.max_lines";
+
+    private final static String SYSLOG_MULTILINE_MAX_BYTES = "syslog.multiline.max_bytes";
+
+    private final static String SYSLOG_MULTILINE_MAX_STREAMS = "syslog.multiline.max_streams";
+
+    private final static String SYSLOG_ENRICH_DNS_ENABLED = "syslog.enrich.dns.enabled";
+
+    private final static String SYSLOG_ENRICH_DNS_TTL = "syslog.enrich.dns.ttl";
+
+    private final static String SYSLOG_ENRICH_DNS_FAILURE_TTL = "syslog.enrich.dns.failure_ttl";
+
+    private final static String SYSLOG_ENRICH_DNS_CACHE_SIZE = "syslog.enrich.dns.cache_size";
+
+    private final static String SYSLOG_ENRICH_INVENTORY_PATH = "syslog.enrich.inventory.path";
+
+    private final static String SYSLOG_ENRICH_INVENTORY_FIELD = "syslog.enrich.inventory.field";
+
+    private final static String SYSLOG_JOURNAL_ENABLED = "syslog.journal.enabled";
+
+    private final static String SYSLOG_JOURNAL_SEGMENT_SIZE = "syslog.journal.segment_size";
+
+    private final static String SYSLOG_JOURNAL_MAX_SIZE = "syslog.journal.max_size";
+
+    private final static String SYSLOG_JOURNAL_DURABILITY = "syslog.journal.durability";
+
+    private final static String SYSLOG_JOURNAL_SYNC_INTERVAL = "syslog.journal.sync_interval";
+
     private final Client client;
 
+    private final ThreadPool threadPool;
+
+    private final NodeEnvironment nodeEnvironment;
+
+    private final Environment environment;
+
     private final String host;
 
     private final String port;
@@ -82,6 +217,12 @@ public class SyslogService extends AbstractLifecycleComponent<SyslogService> {
 
     private final ReceiveBufferSizePredictorFactory receiveBufferSizePredictorFactory;
 
+    private final int maxDatagramsPerRead;
+
+    private final int tcpWorkers;
+
+    private final ByteSizeValue maxFrameSize;
+
     private final int bulkActions;
 
     private final ByteSizeValue bulkSize;
@@ -90,31 +231,91 @@ public class SyslogService extends AbstractLifecycleComponent<SyslogService> {
 
     private final int concurrentRequests;
 
-    private final MessageParser messageParser;
+    private final boolean jsonStreaming;
 
-    private final String index;
+    private final XContentType sourceFormat;
 
-    private final String type;
+    private final SyslogIdGenerator idGenerator;
 
-    private final boolean isTimeWindow;
+    private final List<SyslogListener> listeners;
 
-    private DateTimeFormatter formatter;
+    private final int workerCount;
 
-    private BulkProcessor bulkProcessor;
+    private final int queueSize;
+
+    private final SyslogBackpressure backpressure;
+
+    private final SyslogStats stats;
+
+    private final TimeValue retryInitialDelay;
+
+    private final TimeValue retryMaxDelay;
+
+    private final int retryMaxRetries;
+
+    private final int retryBudget;
+
+    private final String deadLetterIndex;
+
+    private SyslogBulkRetry bulkRetry;
+
+    private final SyslogFilter filter;
 
-    private ConnectionlessBootstrap udpBootstrap;
+    private final SyslogRateLimiter rateLimiter;
 
-    private ServerBootstrap tcpBootstrap;
+    private final boolean dedupEnabled;
 
-    private Channel udpChannel;
+    private final TimeValue dedupWindow;
 
-    private Channel tcpChannel;
+    private final int dedupSize;
+
+    private final Pattern multilineStart;
+
+    private final Pattern multilineContinuation;
+
+    private final TimeValue multilineTimeout;
+
+    private final int multilineMaxLines;
+
+    private final ByteSizeValue multilineMaxBytes;
+
+    private final int multilineMaxStreams;
+
+    private final SyslogResolver resolver;
+
+    private final SyslogInventory inventory;
+
+    private final boolean journalEnabled;
+
+    private final ByteSizeValue journalSegmentSize;
+
+    private final ByteSizeValue journalMaxSize;
+
+    private final boolean journalSyncEachRequest;
+
+    private final TimeValue journalSyncInterval;
+
+    private volatile SyslogJournal journal;
+
+    private volatile long retryAfterMillis;
+
+    private JournalDrainer journalDrainer;
+
+    private BulkProcessor bulkProcessor;
+
+    private NioServerSocketChannelFactory tcpChannelFactory;
+
+    private SyslogWorkers workers;
 
     @Inject
     @SuppressWarnings("unchecked")
-    public SyslogService(Settings settings, Client client) {
+    public SyslogService(Settings settings, Client client, ThreadPool threadPool, NodeEnvironment nodeEnvironment,
+                         Environment environment) {
         super(settings);
         this.client = client;
+        this.threadPool = threadPool;
+        this.nodeEnvironment = nodeEnvironment;
+        this.environment = environment;
         this.host = settings.get(SYSLOG_HOST, "127.0.0.1");
         this.port = settings.get(SYSLOG_PORT, "9500-9600");
         this.bulkActions = settings.getAsInt(SYSLOG_BULK_ACTIONS, 1000);
@@ -122,59 +323,361 @@ public class SyslogService extends AbstractLifecycleComponent<SyslogService> {
         this.flushInterval = settings.getAsTime(SYSLOG_FLUSH_INTERVAL, TimeValue.timeValueSeconds(5));
         this.concurrentRequests = settings.getAsInt(SYSLOG_CONCURRENT_REUQUESTS, Runtime.getRuntime().availableProcessors());
         this.receiveBufferSize = settings.getAsBytesSize(SYSLOG_RECEIVE_BUFFER_SIZE, new ByteSizeValue(10, ByteSizeUnit.MB));
-        this.receiveBufferSizePredictorFactory = new FixedReceiveBufferSizePredictorFactory(receiveBufferSize.bytesAsInt());
-        this.index = settings.get(SYSLOG_INDEX, "'syslog-'YYYY.MM.dd");
-        this.isTimeWindow = index.indexOf('\'') > 0;
-        if (isTimeWindow) {
-            formatter = DateTimeFormat.forPattern(index);
-        }
-        this.type = settings.get(SYSLOG_TYPE, "syslog");
-        Map<String, Object> map = (Map<String, Object>) settings.getAsStructuredMap().get(SYSLOG_PATTERNS);
-        Map<String, Pattern> patterns = new HashMap<>();
-        if (map != null) {
-            for (String key : map.keySet()) {
-                patterns.put(key, Pattern.compile((String) map.get(key)));
+        this.receiveBufferSizePredictorFactory = new AdaptiveReceiveBufferSizePredictorFactory(64, 1024,
+                SyslogDatagramReceiver.MAX_DATAGRAM_SIZE);
+        this.maxDatagramsPerRead = settings.getAsInt(SYSLOG_UDP_MAX_DATAGRAMS_PER_READ, 64);
+        this.tcpWorkers = settings.getAsInt("tcp.worker", 4);
+        this.workerCount = Math.max(1, settings.getAsInt(PREFIX_THREADPOOL + SyslogThreadPool.PARSER + ".size",
+                settings.getAsInt(SYSLOG_WORKERS, Runtime.getRuntime().availableProcessors())));
+        this.queueSize = settings.getAsInt(SYSLOG_QUEUE_SIZE, 8192);
+        int concurrency = Math.max(1, concurrentRequests);
+        ByteSizeValue highWatermarkBytes = settings.getAsBytesSize(SYSLOG_BACKPRESSURE_HIGH_WATERMARK_BYTES,
+                new ByteSizeValue(bulkSize.bytes() * concurrency));
+        ByteSizeValue lowWatermarkBytes = settings.getAsBytesSize(SYSLOG_BACKPRESSURE_LOW_WATERMARK_BYTES,
+                new ByteSizeValue(highWatermarkBytes.bytes() / 2));
+        int highWatermarkActions = settings.getAsInt(SYSLOG_BACKPRESSURE_HIGH_WATERMARK_ACTIONS, bulkActions * concurrency);
+        int lowWatermarkActions = settings.getAsInt(SYSLOG_BACKPRESSURE_LOW_WATERMARK_ACTIONS, highWatermarkActions / 2);
+        this.backpressure = new SyslogBackpressure(highWatermarkBytes.bytes(), lowWatermarkBytes.bytes(),
+                highWatermarkActions, lowWatermarkActions,
+                Severity.fromLabel(settings.get(SYSLOG_BACKPRESSURE_SHED_SEVERITY, Severity.INFORMATIONAL.label())
+                        .toUpperCase(Locale.ROOT)));
+        this.stats = new SyslogStats(backpressure);
+        this.retryInitialDelay = settings.getAsTime(SYSLOG_BULK_RETRY_INITIAL_DELAY, TimeValue.timeValueMillis(50));
+        this.retryMaxDelay = settings.getAsTime(SYSLOG_BULK_RETRY_MAX_DELAY, TimeValue.timeValueSeconds(5));
+        this.retryMaxRetries = settings.getAsInt(SYSLOG_BULK_RETRY_MAX_RETRIES, 8);
+        this.retryBudget = settings.getAsInt(SYSLOG_BULK_RETRY_BUDGET, highWatermarkActions);
+        String deadLetterIndex = settings.get(SYSLOG_DEAD_LETTER_INDEX, "syslog-dead-letter");
+        this.deadLetterIndex = deadLetterIndex.isEmpty() ? null : deadLetterIndex;
+        this.filter = filter(settings);
+        stats.setFilter(filter);
+        this.rateLimiter = rateLimiter(settings);
+        stats.setRateLimiter(rateLimiter);
+        this.dedupEnabled = settings.getAsBoolean(SYSLOG_DEDUP_ENABLED, false);
+        this.dedupWindow = settings.getAsTime(SYSLOG_DEDUP_WINDOW, TimeValue.timeValueSeconds(30));
+        this.dedupSize = settings.getAsInt(SYSLOG_DEDUP_SIZE, 4096);
+        String multilineStart = settings.get(SYSLOG_MULTILINE_START);
+        this.multilineStart = multilineStart != null ? Pattern.compile(multilineStart) : null;
+        String multilineContinuation = settings.get(SYSLOG_MULTILINE_CONTINUATION);
+        this.multilineContinuation = multilineContinuation != null ? Pattern.compile(multilineContinuation) : null;
+        this.multilineTimeout = settings.getAsTime(SYSLOG_MULTILINE_TIMEOUT, TimeValue.timeValueSeconds(1));
+        this.multilineMaxLines = settings.getAsInt(SYSLOG_MULTILINE_MAX_LINES, 500);
+        this.multilineMaxBytes = settings.getAsBytesSize(SYSLOG_MULTILINE_MAX_BYTES, new ByteSizeValue(64, ByteSizeUnit.KB));
+        this.multilineMaxStreams = settings.getAsInt(SYSLOG_MULTILINE_MAX_STREAMS, 1024);
+        if (this.multilineStart != null || this.multilineContinuation != null) {
+            logger.info("syslog multi-line events: start [{}], continuation [{}], timeout [{}], max_lines [{}], max_bytes [{}], max_streams [{}]",
+                    multilineStart, multilineContinuation, multilineTimeout, multilineMaxLines, multilineMaxBytes,
+                    multilineMaxStreams);
+        }
+        this.resolver = resolver(settings);
+        stats.setResolver(resolver);
+        this.inventory = inventory(settings);
+        stats.setInventory(inventory);
+        this.journalEnabled = settings.getAsBoolean(SYSLOG_JOURNAL_ENABLED, false);
+        this.journalSegmentSize = settings.getAsBytesSize(SYSLOG_JOURNAL_SEGMENT_SIZE, new ByteSizeValue(64, ByteSizeUnit.MB));
+        this.journalMaxSize = settings.getAsBytesSize(SYSLOG_JOURNAL_MAX_SIZE, new ByteSizeValue(1, ByteSizeUnit.GB));
+        this.journalSyncEachRequest = "request".equals(settings.get(SYSLOG_JOURNAL_DURABILITY, "async"));
+        this.journalSyncInterval = settings.getAsTime(SYSLOG_JOURNAL_SYNC_INTERVAL, TimeValue.timeValueSeconds(5));
+        this.maxFrameSize = settings.getAsBytesSize(SYSLOG_TCP_MAX_FRAME_SIZE, new ByteSizeValue(64, ByteSizeUnit.KB));
+        this.jsonStreaming = settings.getAsBoolean(SYSLOG_JSON_STREAMING, true);
+        this.sourceFormat = sourceFormat(settings.get(SYSLOG_SOURCE_FORMAT, "json"));
+        this.idGenerator = SyslogIdGenerator.create(settings.get(SYSLOG_DOCUMENT_ID, "auto"));
+        String index = settings.get(SYSLOG_INDEX, "'syslog-'YYYY.MM.dd");
+        String type = settings.get(SYSLOG_TYPE, "syslog");
+        Map<String, Object> structured = settings.getAsStructuredMap();
+        Map<String, Object> patterns = (Map<String, Object>) structured.get(SYSLOG_PATTERNS);
+        Map<String, Object> fieldNames = (Map<String, Object>) structured.get(SYSLOG_FIELD_NAMES);
+        this.listeners = new ArrayList<>();
+        Map<String, Settings> groups = settings.getGroups(SYSLOG_LISTENERS);
+        if (groups.isEmpty()) {
+            listeners.add(listener("", host, port, "udp,tcp", index, type, patterns, fieldNames));
+        } else {
+            for (Map.Entry<String, Settings> entry : groups.entrySet()) {
+                Settings listenerSettings = entry.getValue();
+                Map<String, Object> listenerStructured = listenerSettings.getAsStructuredMap();
+                Map<String, Object> listenerPatterns = (Map<String, Object>) listenerStructured.get(SYSLOG_PATTERNS);
+                Map<String, Object> listenerFieldNames = (Map<String, Object>) listenerStructured.get(SYSLOG_FIELD_NAMES);
+                listeners.add(listener(entry.getKey(),
+                        listenerSettings.get("host", host),
+                        listenerSettings.get("port", port),
+                        listenerSettings.get("protocol", "udp,tcp"),
+                        listenerSettings.get(SYSLOG_INDEX, index),
+                        listenerSettings.get(SYSLOG_TYPE, type),
+                        listenerPatterns != null ? listenerPatterns : patterns,
+                        listenerFieldNames != null ? listenerFieldNames : fieldNames));
             }
         }
-        this.messageParser = new MessageParser().setPatterns(patterns);
-        map = (Map<String, Object>) settings.getAsStructuredMap().get(SYSLOG_FIELD_NAMES);
+        logger.info("syslog server: bulk_actions [{}], bulk_size [{}], flush_interval [{}], concurrent_requests [{}], source_format [{}], document_id [{}], workers [{}], queue_size [{}], listeners [{}]",
+                bulkActions, bulkSize, flushInterval, concurrentRequests, sourceFormat.shortName(), settings.get(SYSLOG_DOCUMENT_ID, "auto"), workerCount, queueSize, listeners.size());
+    }
+
+    /**
+     * Create a listener with a precompiled parser configuration.
+     */
+    @SuppressWarnings("unchecked")
+    private SyslogListener listener(String name, String host, String port, String protocol, String index, String type,
+                                    Map<String, Object> map, Map<String, Object> fieldNames) {
+        List<String> protocols = values(protocol);
+        Map<String, String> patterns = new LinkedHashMap<>();
+        PatternExtractor.Builder patternExtractor = PatternExtractor.builder();
         if (map != null) {
             for (String key : map.keySet()) {
-                messageParser.setFieldName(key, (String) map.get(key));
+                Object value = map.get(key);
+                if (value instanceof Map) {
+                    // scoped pattern with "pattern", "facility" and "program"
+                    Map<String, Object> scoped = (Map<String, Object>) value;
+                    String pattern = (String) scoped.get("pattern");
+                    List<Facility> facilities = new ArrayList<>();
+                    for (String facility : values(scoped.get("facility"))) {
+                        facilities.add(Facility.fromLabel(facility.toUpperCase(Locale.ROOT)));
+                    }
+                    patternExtractor.add(key, Pattern.compile(pattern), facilities, values(scoped.get("program")));
+                    patterns.put(key, pattern);
+                } else {
+                    patternExtractor.add(key, Pattern.compile((String) value));
+                    patterns.put(key, (String) value);
+                }
             }
         }
-        logger.info("syslog server: host [{}], port [{}], bulk_actions [{}], bulk_size [{}], flush_interval [{}], concurrent_requests [{}], index [{}], type [{}], patterns [{}]",
-                host, port, bulkActions, bulkSize, flushInterval, concurrentRequests, index, type, patterns);
+        MessageParser messageParser = new MessageParser().setPatternExtractor(patternExtractor.build())
+                .setJsonStreaming(jsonStreaming);
+        if (fieldNames != null) {
+            for (String key : fieldNames.keySet()) {
+                messageParser.setFieldName(key, (String) fieldNames.get(key));
+            }
+        }
+        logger.info("syslog listener [{}]: host [{}], port [{}], protocol {}, index [{}], type [{}], patterns [{}]",
+                name, host, port, protocols, index, type, patterns);
+        return new SyslogListener(name, host, port, protocols.contains("udp"), protocols.contains("tcp"),
+                index, type, messageParser, stats);
+    }
+
+    /**
+     * Create the resolver of sender host names, looking up on the resolver thread pool.
+     */
+    private SyslogResolver resolver(Settings settings) {
+        if (!settings.getAsBoolean(SYSLOG_ENRICH_DNS_ENABLED, false)) {
+            return null;
+        }
+        TimeValue ttl = settings.getAsTime(SYSLOG_ENRICH_DNS_TTL, TimeValue.timeValueHours(1));
+        TimeValue failureTtl = settings.getAsTime(SYSLOG_ENRICH_DNS_FAILURE_TTL, TimeValue.timeValueMinutes(5));
+        int cacheSize = settings.getAsInt(SYSLOG_ENRICH_DNS_CACHE_SIZE, 10000);
+        logger.info("syslog reverse DNS: ttl [{}], failure_ttl [{}], cache_size [{}]", ttl, failureTtl, cacheSize);
+        return new SyslogResolver(threadPool.executor(SyslogThreadPool.RESOLVER), ttl.millis(), failureTtl.millis(), cacheSize);
+    }
+
+    /**
+     * Load the inventory of senders, a relative path is resolved against the config directory.
+     */
+    private SyslogInventory inventory(Settings settings) {
+        String path = settings.get(SYSLOG_ENRICH_INVENTORY_PATH);
+        if (path == null) {
+            return null;
+        }
+        Path file = environment != null ? environment.configFile().resolve(path) : Paths.get(path);
+        try {
+            SyslogInventory inventory = SyslogInventory.load(file, settings.get(SYSLOG_ENRICH_INVENTORY_FIELD, "inventory"));
+            logger.info("syslog inventory: {} addresses with attributes {} from {}",
+                    inventory.size(), inventory.getAttributes(), file);
+            return inventory;
+        } catch (IOException e) {
+            throw new ElasticsearchException("failed to load inventory from " + file, e);
+        }
+    }
+
+    private static XContentType sourceFormat(String format) {
+        switch (format) {
+            case "json":
+                return XContentType.JSON;
+            case "smile":
+                return XContentType.SMILE;
+            case "cbor":
+                return XContentType.CBOR;
+            default:
+                throw new IllegalArgumentException("unknown source format [" + format + "], expected json, smile or cbor");
+        }
+    }
+
+    /**
+     * Create the filter from the rules, in the order of their names.
+     */
+    private SyslogFilter filter(Settings settings) {
+        Map<String, Settings> groups = new TreeMap<>(settings.getGroups(SYSLOG_FILTER_RULES));
+        if (groups.isEmpty()) {
+            return null;
+        }
+        List<SyslogFilter.Rule> rules = new ArrayList<>();
+        for (Map.Entry<String, Settings> entry : groups.entrySet()) {
+            Settings rule = entry.getValue();
+            List<Facility> facilities = new ArrayList<>();
+            for (String facility : values(rule.get("facility"))) {
+                facilities.add(Facility.fromLabel(facility.toUpperCase(Locale.ROOT)));
+            }
+            List<Severity> severities = new ArrayList<>();
+            for (String severity : values(rule.get("severity"))) {
+                severities.add(Severity.fromLabel(severity.toUpperCase(Locale.ROOT)));
+            }
+            List<String> remotes = values(rule.get("remote"));
+            String index = rule.get(SYSLOG_INDEX);
+            SyslogFilter.Action action = SyslogFilter.Action.valueOf(rule.get("action", index != null ? "route" : "drop")
+                    .toUpperCase(Locale.ROOT));
+            rules.add(new SyslogFilter.Rule(entry.getKey(), action, facilities, severities, remotes, index,
+                    rule.get(SYSLOG_TYPE)));
+            logger.info("syslog filter [{}]: action [{}], facility {}, severity {}, remote {}, index [{}]",
+                    entry.getKey(), action, facilities, severities, remotes, index);
+        }
+        return new SyslogFilter(rules);
+    }
+
+    /**
+     * Create the rate limiter from the rules, in the order of their names.
+     */
+    private SyslogRateLimiter rateLimiter(Settings settings) {
+        Map<String, Settings> groups = new TreeMap<>(settings.getGroups(SYSLOG_RATE_LIMIT_RULES));
+        if (groups.isEmpty()) {
+            return null;
+        }
+        int stripes = settings.getAsInt(SYSLOG_RATE_LIMIT_STRIPES, 1024);
+        List<SyslogRateLimiter.Rule> rules = new ArrayList<>();
+        for (Map.Entry<String, Settings> entry : groups.entrySet()) {
+            Settings rule = entry.getValue();
+            List<Facility> facilities = new ArrayList<>();
+            for (String facility : values(rule.get("facility"))) {
+                facilities.add(Facility.fromLabel(facility.toUpperCase(Locale.ROOT)));
+            }
+            List<Severity> severities = new ArrayList<>();
+            for (String severity : values(rule.get("severity"))) {
+                severities.add(Severity.fromLabel(severity.toUpperCase(Locale.ROOT)));
+            }
+            double rate = rule.getAsDouble("rate", 0.0d);
+            int burst = rule.getAsInt("burst", (int) Math.max(1.0d, Math.ceil(rate)));
+            double sample = rule.getAsDouble("sample", 1.0d);
+            SyslogRateLimiter.Key key = SyslogRateLimiter.Key.fromString(rule.get("key", "none"));
+            rules.add(new SyslogRateLimiter.Rule(entry.getKey(), key, facilities, severities, values(rule.get("host")),
+                    rate, burst, sample, stripes));
+            logger.info("syslog rate limit [{}]: key [{}], facility {}, severity {}, rate [{}], burst [{}], sample [{}]",
+                    entry.getKey(), key, facilities, severities, rate, burst, sample);
+        }
+        return new SyslogRateLimiter(rules);
+    }
+
+    List<SyslogListener> listeners() {
+        return listeners;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> values(Object value) {
+        List<String> list = new ArrayList<>();
+        if (value instanceof String) {
+            for (String s : ((String) value).split(",")) {
+                if (!s.trim().isEmpty()) {
+                    list.add(s.trim());
+                }
+            }
+        } else if (value instanceof Collection) {
+            for (Object o : (Collection<Object>) value) {
+                list.add(o.toString());
+            }
+        } else if (value instanceof Map) {
+            // arrays in flat settings, e.g. program.0, program.1
+            for (Object o : ((Map<String, Object>) value).values()) {
+                list.add(o.toString());
+            }
+        }
+        return list;
     }
 
     @Override
     protected void doStart() throws ElasticsearchException {
-        bulkProcessor = BulkProcessor.builder(client, new BulkListener())
+        final BulkListener bulkListener = new BulkListener();
+        // the bulk processor calls beforeBulk before it waits for a permit, see when the request is really sent
+        Client bulkClient = new FilterClient(client) {
+            @Override
+            protected <Request extends ActionRequest, Response extends ActionResponse,
+                    RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>> void doExecute(
+                    Action<Request, Response, RequestBuilder> action, Request request, ActionListener<Response> listener) {
+                if (request instanceof BulkRequest) {
+                    bulkListener.sent((BulkRequest) request);
+                }
+                super.doExecute(action, request, listener);
+            }
+        };
+        bulkProcessor = BulkProcessor.builder(bulkClient, bulkListener)
                 .setBulkActions(bulkActions)
                 .setBulkSize(bulkSize)
                 .setFlushInterval(flushInterval)
                 .setConcurrentRequests(concurrentRequests)
+                .setBackoffPolicy(BackoffPolicy.noBackoff())
                 .build();
-        initializeUDP();
-        initializeTCP();
+        bulkRetry = new SyslogBulkRetry(retryInitialDelay, retryMaxDelay, retryMaxRetries, retryBudget,
+                threadPool.scheduler(), new SyslogBulkRetry.Sink() {
+                    @Override
+                    public void retry(IndexRequest request) {
+                        SyslogService.this.retry(request);
+                    }
+                });
+        stats.setBulkRetry(bulkRetry);
+        List<Processor> processors = new ArrayList<>();
+        for (int i = 0; i < workerCount; i++) {
+            processors.add(new Processor());
+        }
+        workers = new SyslogWorkers(processors, queueSize);
+        stats.setWorkers(workers);
+        workers.start(threadPool.executor(SyslogThreadPool.PARSER));
+        if (journalEnabled) {
+            initializeJournal();
+        }
+        for (SyslogListener listener : listeners) {
+            if (listener.isTcp() && tcpChannelFactory == null) {
+                // the listeners share the boss and the I/O workers
+                tcpChannelFactory = new NioServerSocketChannelFactory(
+                        new NioServerBossPool(threadPool.executor(SyslogThreadPool.BOSS), 1, ThreadNameDeterminer.CURRENT),
+                        new NioWorkerPool(threadPool.executor(SyslogThreadPool.WORKER), tcpWorkers, ThreadNameDeterminer.CURRENT));
+            }
+        }
+        for (SyslogListener listener : listeners) {
+            if (listener.isUdp()) {
+                initializeUDP(listener);
+            }
+            if (listener.isTcp()) {
+                initializeTCP(listener);
+            }
+        }
         logger.info("syslog server up");
     }
 
     @Override
     protected void doStop() throws ElasticsearchException {
-        if (udpChannel != null) {
-            udpChannel.close().awaitUninterruptibly();
+        for (SyslogListener listener : listeners) {
+            if (listener.udpReceiver != null) {
+                listener.udpReceiver.close();
+            }
+            if (listener.tcpChannel != null) {
+                listener.tcpChannel.close().awaitUninterruptibly();
+            }
         }
-        if (udpBootstrap != null) {
-            udpBootstrap.releaseExternalResources();
+        if (tcpChannelFactory != null) {
+            // stops the boss and the I/O workers, the thread pools belong to Elasticsearch
+            tcpChannelFactory.shutdown();
+            tcpChannelFactory = null;
         }
-        if (tcpChannel != null) {
-            tcpChannel.close().awaitUninterruptibly();
+        if (workers != null) {
+            workers.close(flushInterval.millis());
         }
-        if (tcpBootstrap != null) {
-            tcpBootstrap.releaseExternalResources();
+        if (journalDrainer != null) {
+            // the drainer may be adding a record it has read, before the bulk processor and journal close
+            journalDrainer.close(flushInterval.millis());
+        }
+        if (bulkRetry != null) {
+            bulkRetry.awaitPending(retryMaxDelay.millis());
         }
         bulkProcessor.close();
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                logger.warn("failed to close journal", e);
+            }
+        }
         logger.info("syslog server down");
     }
 
@@ -182,34 +685,48 @@ public class SyslogService extends AbstractLifecycleComponent<SyslogService> {
     protected void doClose() throws ElasticsearchException {
     }
 
-    private void initializeUDP() {
-        udpBootstrap = new ConnectionlessBootstrap(new NioDatagramChannelFactory(
-                Executors.newCachedThreadPool(), 4));
-        udpBootstrap.setOption("receiveBufferSize", receiveBufferSize.bytesAsInt());
-        udpBootstrap.setOption("receiveBufferSizePredictorFactory", receiveBufferSizePredictorFactory);
-        udpBootstrap.setOption("broadcast", "false");
-        udpBootstrap.setPipelineFactory(new ChannelPipelineFactory() {
-            @Override
-            public ChannelPipeline getPipeline() throws Exception {
-                return Channels.pipeline(new Handler("udp"));
-            }
-        });
+    public SyslogStats stats() {
+        return stats;
+    }
+
+    private void initializeJournal() {
+        if (nodeEnvironment == null || !nodeEnvironment.hasNodeFile()) {
+            logger.warn("no node data path, journal disabled");
+            return;
+        }
+        Path path = nodeEnvironment.nodeDataPaths()[0].resolve("syslog");
+        try {
+            journal = new SyslogJournal(path, journalSegmentSize.bytesAsInt(), journalMaxSize.bytes(), journalSyncEachRequest);
+        } catch (IOException e) {
+            logger.warn("failed to open journal in {}, journal disabled", e, path);
+            return;
+        }
+        backpressure.setJournal(journal);
+        stats.setJournal(journal);
+        journalDrainer = new JournalDrainer(journal);
+        threadPool.generic().execute(journalDrainer);
+        logger.info("journal running, path {}, segment_size [{}], max_size [{}], durability [{}]",
+                path, journalSegmentSize, journalMaxSize, journalSyncEachRequest ? "request" : "async");
+    }
 
+    private void initializeUDP(final SyslogListener listener) {
+        final Handler handler = new Handler(listener, "udp");
         InetAddress address;
         try {
-            address = SyslogNetworkUtils.resolveInetAddress(host, null);
+            address = SyslogNetworkUtils.resolveInetAddress(listener.getHost(), null);
         } catch (IOException e) {
-            logger.warn("failed to resolve host {}", e, host);
+            logger.warn("failed to resolve host {}", e, listener.getHost());
             return;
         }
         final InetAddress hostAddress = address;
-        PortsRange portsRange = new PortsRange(port);
+        PortsRange portsRange = new PortsRange(listener.getPort());
         final AtomicReference<Exception> lastException = new AtomicReference<>();
         boolean success = portsRange.iterate(new PortsRange.PortCallback() {
             @Override
             public boolean onPortNumber(int portNumber) {
                 try {
-                    udpChannel = udpBootstrap.bind(new InetSocketAddress(hostAddress, portNumber));
+                    listener.udpReceiver = new SyslogDatagramReceiver(new InetSocketAddress(hostAddress, portNumber),
+                            receiveBufferSize.bytesAsInt(), maxDatagramsPerRead, handler);
                 } catch (Exception e) {
                     lastException.set(e);
                     return false;
@@ -218,16 +735,15 @@ public class SyslogService extends AbstractLifecycleComponent<SyslogService> {
             }
         });
         if (!success) {
-            logger.warn("failed to bind to {}/{}", lastException.get(), hostAddress, port);
+            logger.warn("failed to bind to {}/{}", lastException.get(), hostAddress, listener.getPort());
             return;
         }
-        logger.info("UDP listener running, address {}", udpChannel.getLocalAddress());
+        threadPool.executor(SyslogThreadPool.WORKER).execute(listener.udpReceiver);
+        logger.info("UDP listener [{}] running, address {}", listener.getName(), listener.udpReceiver.getLocalAddress());
     }
 
-    private void initializeTCP() {
-        tcpBootstrap = new ServerBootstrap(new NioServerSocketChannelFactory(
-                Executors.newCachedThreadPool(), Executors.newCachedThreadPool(),
-                settings.getAsInt("tcp.worker", 4)));
+    private void initializeTCP(final SyslogListener listener) {
+        final ServerBootstrap tcpBootstrap = new ServerBootstrap(tcpChannelFactory);
 
         tcpBootstrap.setOption("receiveBufferSize", receiveBufferSize.bytesAsInt());
         tcpBootstrap.setOption("receiveBufferSizePredictorFactory", receiveBufferSizePredictorFactory);
@@ -244,25 +760,25 @@ public class SyslogService extends AbstractLifecycleComponent<SyslogService> {
         tcpBootstrap.setPipelineFactory(new ChannelPipelineFactory() {
             @Override
             public ChannelPipeline getPipeline() throws Exception {
-                return Channels.pipeline(new Handler("tcp"));
+                return Channels.pipeline(new SyslogFrameDecoder(maxFrameSize.bytesAsInt()), new Handler(listener, "tcp"));
             }
         });
 
         InetAddress address;
         try {
-            address = SyslogNetworkUtils.resolveInetAddress(host, null);
+            address = SyslogNetworkUtils.resolveInetAddress(listener.getHost(), null);
         } catch (IOException e) {
-            logger.warn("failed to resolve host {}", e, host);
+            logger.warn("failed to resolve host {}", e, listener.getHost());
             return;
         }
         final InetAddress hostAddress = address;
-        PortsRange portsRange = new PortsRange(port);
+        PortsRange portsRange = new PortsRange(listener.getPort());
         final AtomicReference<Exception> lastException = new AtomicReference<>();
         boolean success = portsRange.iterate(new PortsRange.PortCallback() {
             @Override
             public boolean onPortNumber(int portNumber) {
                 try {
-                    tcpChannel = tcpBootstrap.bind(new InetSocketAddress(hostAddress, portNumber));
+                    listener.tcpChannel = tcpBootstrap.bind(new InetSocketAddress(hostAddress, portNumber));
                 } catch (Exception e) {
                     lastException.set(e);
                     return false;
@@ -271,36 +787,94 @@ public class SyslogService extends AbstractLifecycleComponent<SyslogService> {
             }
         });
         if (!success) {
-            logger.warn("failed to bind to {}/{}", lastException.get(), hostAddress, port);
+            logger.warn("failed to bind to {}/{}", lastException.get(), hostAddress, listener.getPort());
             return;
         }
-        logger.info("TCP listener running, address {}", tcpChannel.getLocalAddress());
+        logger.info("TCP listener [{}] running, address {}", listener.getName(), listener.tcpChannel.getLocalAddress());
     }
 
-    class Handler extends SimpleChannelUpstreamHandler {
+    class Handler extends SimpleChannelUpstreamHandler implements SyslogDatagramReceiver.Listener {
+
+        private final SyslogListener listener;
 
         private final String protocol;
 
-        Handler(String protocol) {
+        private final SyslogStats.ListenerStats listenerStats;
+
+        Handler(SyslogListener listener, String protocol) {
+            this.listener = listener;
             this.protocol = protocol;
+            this.listenerStats = listener.stats(protocol);
+        }
+
+        @Override
+        public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+            backpressure.register(ctx.getChannel());
+            super.channelConnected(ctx, e);
         }
 
         @Override
         public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
-            ChannelBuffer buffer = (ChannelBuffer) e.getMessage();
-            XContentBuilder builder = jsonBuilder();
-            parse(ctx, buffer, builder);
-            IndexRequest indexRequest = new IndexRequest(isTimeWindow ? formatter.print(new DateTime()) : index)
-                    .type(type)
-                    .opType(IndexRequest.OpType.INDEX)
-                    .source(builder);
-            try {
-                bulkProcessor.add(indexRequest);
-            } catch (Exception e1) {
-                logger.warn("failed to execute bulk request", e1);
+            Object message = e.getMessage();
+            Channel channel = ctx.getChannel();
+            if (message instanceof List) {
+                for (Object frame : (List<?>) message) {
+                    process(channel.getLocalAddress(), channel.getRemoteAddress(), (ChannelBuffer) frame);
+                }
+            } else {
+                process(channel.getLocalAddress(), channel.getRemoteAddress(), (ChannelBuffer) message);
             }
         }
 
+        @Override
+        public void onDatagram(SocketAddress localAddress, SocketAddress remoteAddress, ChannelBuffer buffer) {
+            process(localAddress, remoteAddress, buffer);
+        }
+
+        private void process(SocketAddress localAddress, SocketAddress remoteAddress, ChannelBuffer buffer) {
+            listenerStats.received(buffer.readableBytes());
+            if (filter != null) {
+                SyslogFilter.Rule rule = filter.match(remoteAddress, buffer);
+                if (rule != null) {
+                    rule.matched();
+                    if (rule.getAction() == SyslogFilter.Action.DROP) {
+                        listenerStats.filtered();
+                        SyslogDatagramReceiver.release(buffer);
+                        return;
+                    }
+                }
+            }
+            if (rateLimiter != null && !rateLimiter.acquire(remoteAddress, buffer)) {
+                listenerStats.rateLimited();
+                SyslogDatagramReceiver.release(buffer);
+                return;
+            }
+            if ("udp".equals(protocol)) {
+                // datagrams can not wait, so shed them under backpressure, or when the worker is full
+                if (backpressure.isPaused()) {
+                    int severity = severity(buffer);
+                    if (backpressure.shouldShed(severity)) {
+                        backpressure.drop(severity);
+                        listenerStats.dropped();
+                        SyslogDatagramReceiver.release(buffer);
+                        return;
+                    }
+                }
+                if (!workers.offer(listener, protocol, localAddress, remoteAddress, buffer)) {
+                    backpressure.drop(severity(buffer));
+                    listenerStats.dropped();
+                    SyslogDatagramReceiver.release(buffer);
+                }
+            } else {
+                workers.put(listener, protocol, localAddress, remoteAddress, buffer);
+            }
+        }
+
+        private int severity(ChannelBuffer buffer) {
+            int pri = MessageParser.parsePriority(buffer);
+            return pri < 0 ? -1 : pri % 8;
+        }
+
         @Override
         public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
             if (e.getCause() instanceof BindException) {
@@ -310,32 +884,372 @@ public class SyslogService extends AbstractLifecycleComponent<SyslogService> {
             logger.warn("failure caught", e.getCause());
             throw new IOException(e.getCause());
         }
+    }
 
-        private void parse(ChannelHandlerContext ctx, ChannelBuffer buffer, XContentBuilder builder) throws IOException {
-            SocketAddress localAddress = ctx.getChannel().getLocalAddress();
-            SocketAddress remoteAddress = ctx.getChannel().getRemoteAddress();
-            ChannelBufferBytesReference ref = new ChannelBufferBytesReference(buffer);
+    class Processor implements SyslogWorkers.Processor, SyslogDeduplicator.Listener, SyslogMultiline.Listener {
+
+        private final SyslogMultiline multiline = multilineStart != null || multilineContinuation != null ?
+                new SyslogMultiline(multilineStart, multilineContinuation, multilineTimeout.millis(), multilineMaxLines,
+                        multilineMaxBytes.bytesAsInt(), multilineMaxStreams) : null;
+
+        private final SyslogDeduplicator deduplicator = dedupEnabled ?
+                new SyslogDeduplicator(dedupWindow.millis(), dedupSize) : null;
+
+        private final long expireIntervalMillis = Math.max(1L, dedupWindow.millis() / 4);
+
+        private long nextExpiry;
+
+        /**
+         * The address strings of the senders and listeners seen by this worker. TCP frames of a connection
+         * carry the same address instances, so the last addresses are checked by identity first.
+         */
+        private final Map<SocketAddress, String> addresses = new HashMap<>();
+
+        private SocketAddress lastLocalAddress;
+
+        private String lastLocal;
+
+        private SocketAddress lastRemoteAddress;
+
+        private String lastRemote;
+
+        @Override
+        public void process(SyslogFrame frame) throws IOException {
+            SyslogListener listener = frame.getListener();
+            SyslogStats.ListenerStats listenerStats = listener.stats(frame.getProtocol());
+            long start = System.nanoTime();
+            listenerStats.queueWait(start - frame.getReceivedNanos());
+            if (multiline != null) {
+                // the lines are copied, the frame is released after processing
+                Origin origin = new Origin(listener, frame.getProtocol(), frame.getLocalAddress(), frame.getRemoteAddress());
+                if (multiline.offer(frame.getRemoteAddress(), frame.getBuffer(), origin, System.currentTimeMillis(), this)) {
+                    return;
+                }
+            }
+            process(listener, frame.getProtocol(), frame.getLocalAddress(), frame.getRemoteAddress(), frame.getBuffer(), start);
+        }
+
+        @Override
+        public void event(Object context, ChannelBuffer event, int lines) {
+            Origin origin = (Origin) context;
+            if (lines > 1) {
+                origin.listener.stats(origin.protocol).multilineEvent(lines);
+            }
+            try {
+                process(origin.listener, origin.protocol, origin.localAddress, origin.remoteAddress, event, System.nanoTime());
+            } catch (IOException e) {
+                logger.warn("failed to index multi-line event", e);
+            }
+        }
+
+        private void process(SyslogListener listener, String protocol, SocketAddress localAddress,
+                             SocketAddress remoteAddress, ChannelBuffer buffer, long start) throws IOException {
+            SyslogStats.ListenerStats listenerStats = listener.stats(protocol);
+            if (deduplicator != null) {
+                long now = System.currentTimeMillis();
+                expire(now);
+                long seed = 31L * listener.getName().hashCode() + protocol.hashCode();
+                if (deduplicator.isRepeat(SyslogDeduplicator.key(buffer, seed), now, this)) {
+                    // repeats are counted, not parsed
+                    listenerStats.repeated();
+                    return;
+                }
+            }
+            XContentBuilder builder = XContentFactory.contentBuilder(sourceFormat);
+            if (!parse(listener.getMessageParser(), protocol, localAddress, remoteAddress, buffer, builder, listenerStats)) {
+                listenerStats.parseFailure();
+            }
+            listenerStats.parseTime(System.nanoTime() - start);
+            SyslogIndexNameResolver indexNameResolver = listener.getIndexNameResolver();
+            String type = listener.getType();
+            if (filter != null && filter.routes()) {
+                // matching again is cheaper than carrying the rule through the ring buffer
+                SyslogFilter.Rule rule = filter.match(remoteAddress, buffer);
+                if (rule != null && rule.getAction() == SyslogFilter.Action.ROUTE) {
+                    indexNameResolver = rule.getIndexNameResolver();
+                    type = rule.getType() != null ? rule.getType() : type;
+                }
+            }
+            IndexRequest indexRequest = new IndexRequest(indexNameResolver.resolve())
+                    .type(type)
+                    .id(idGenerator != null ? idGenerator.id(remoteAddress, buffer) : null)
+                    .opType(IndexRequest.OpType.INDEX)
+                    .source(builder);
+            if (deduplicator != null) {
+                deduplicator.attach(new FirstMessage(indexNameResolver, type, indexRequest.id(), listenerStats,
+                        indexRequest.source()));
+            }
+            index(indexRequest, listenerStats);
+        }
+
+        @Override
+        public void idle() throws IOException {
+            if (multiline != null) {
+                multiline.expire(System.currentTimeMillis(), this);
+            }
+            if (deduplicator != null) {
+                expire(System.currentTimeMillis());
+            }
+        }
+
+        @Override
+        public void close() {
+            if (multiline != null) {
+                multiline.expire(Long.MAX_VALUE, this);
+            }
+            if (deduplicator != null) {
+                deduplicator.expire(Long.MAX_VALUE, this);
+            }
+        }
+
+        @Override
+        public void repeated(Object first, int repeats, long firstSeen, long lastSeen) {
+            FirstMessage message = (FirstMessage) first;
+            try {
+                Map<String, Object> source = XContentHelper.convertToMap(message.source, false).v2();
+                source.put("repeat_count", repeats);
+                source.put("first_seen", new Date(firstSeen));
+                source.put("last_seen", new Date(lastSeen));
+                IndexRequest indexRequest = new IndexRequest(message.indexNameResolver.resolve(lastSeen))
+                        .type(message.type)
+                        .id(message.id != null ? message.id + "-repeats" : null)
+                        .opType(IndexRequest.OpType.INDEX)
+                        .source(XContentFactory.contentBuilder(sourceFormat).map(source));
+                message.stats.repeatSummary();
+                index(indexRequest, message.stats);
+            } catch (IOException e) {
+                logger.warn("failed to index repeated message", e);
+            }
+        }
+
+        private void expire(long now) {
+            if (now >= nextExpiry) {
+                nextExpiry = now + expireIntervalMillis;
+                deduplicator.expire(now, this);
+            }
+        }
+
+        private void index(IndexRequest indexRequest, SyslogStats.ListenerStats listenerStats) throws IOException {
+            SyslogJournal journal = SyslogService.this.journal;
+            if (journal != null && (backpressure.isPaused() || journal.hasBacklog()
+                    || System.currentTimeMillis() < retryAfterMillis)) {
+                // keep the order of messages while there is a backlog in the journal
+                try {
+                    if (journal.append(indexRequest.index(), indexRequest.type(), indexRequest.id(), indexRequest.source())) {
+                        return;
+                    }
+                } catch (IllegalArgumentException e) {
+                    // larger than a segment, indexing it directly would break the order
+                    backpressure.drop(-1);
+                    listenerStats.dropped();
+                    return;
+                }
+                backpressure.journalFull();
+            }
+            try {
+                add(indexRequest);
+            } catch (Exception e) {
+                logger.warn("failed to execute bulk request", e);
+            }
+        }
+
+        private boolean parse(MessageParser messageParser, String protocol, SocketAddress localAddress, SocketAddress remoteAddress, ChannelBuffer buffer,
+                              XContentBuilder builder, MessageParser.Listener listener) {
             try {
                 builder.startObject();
-                builder.field("protocol", protocol);
+                builder.generator().writeStringField(PROTOCOL_FIELD, protocol);
                 if (localAddress != null) {
-                    builder.field("local", localAddress.toString());
+                    if (localAddress != lastLocalAddress) {
+                        lastLocal = address(localAddress);
+                        lastLocalAddress = localAddress;
+                    }
+                    builder.generator().writeStringField(LOCAL_FIELD, lastLocal);
                 }
                 if (remoteAddress != null) {
-                    builder.field("remote", remoteAddress.toString());
+                    if (remoteAddress != lastRemoteAddress) {
+                        lastRemote = address(remoteAddress);
+                        lastRemoteAddress = remoteAddress;
+                    }
+                    builder.generator().writeStringField(REMOTE_FIELD, lastRemote);
+                    if (resolver != null) {
+                        // a cached host name or none, lookups never block the worker
+                        String host = resolver.get(remoteAddress, System.currentTimeMillis());
+                        if (host != null) {
+                            builder.generator().writeStringField(REMOTE_HOST_FIELD, host);
+                        }
+                    }
+                    if (inventory != null) {
+                        inventory.write(remoteAddress, builder);
+                    }
                 }
-                messageParser.parseMessage(ref.toUtf8(), builder);
+                messageParser.parseMessage(buffer, builder, listener);
                 builder.endObject();
+                return true;
             } catch (Exception e) {
                 logger.error(e.getMessage(), e);
+                return false;
+            }
+        }
+
+        private String address(SocketAddress address) {
+            String s = addresses.get(address);
+            if (s == null) {
+                if (addresses.size() >= MAX_CACHED_ADDRESSES) {
+                    addresses.clear();
+                }
+                s = address.toString();
+                addresses.put(address, s);
+            }
+            return s;
+        }
+    }
+
+    /**
+     * Where the first line of a multi-line event was received.
+     */
+    private static class Origin {
+
+        private final SyslogListener listener;
+
+        private final String protocol;
+
+        private final SocketAddress localAddress;
+
+        private final SocketAddress remoteAddress;
+
+        Origin(SyslogListener listener, String protocol, SocketAddress localAddress, SocketAddress remoteAddress) {
+            this.listener = listener;
+            this.protocol = protocol;
+            this.localAddress = localAddress;
+            this.remoteAddress = remoteAddress;
+        }
+    }
+
+    /**
+     * The first message of a burst, indexed again with the number of repeats when the burst is over.
+     */
+    private static class FirstMessage {
+
+        private final SyslogIndexNameResolver indexNameResolver;
+
+        private final String type;
+
+        private final String id;
+
+        private final SyslogStats.ListenerStats stats;
+
+        private final BytesReference source;
+
+        FirstMessage(SyslogIndexNameResolver indexNameResolver, String type, String id, SyslogStats.ListenerStats stats,
+                     BytesReference source) {
+            this.indexNameResolver = indexNameResolver;
+            this.type = type;
+            this.id = id;
+            this.stats = stats;
+            this.source = source;
+        }
+    }
+
+    /**
+     * Add a retried request or a dead letter to the bulk processor on the generic thread pool. Adding may
+     * wait for a bulk permit, so it must not run on the scheduler or in a bulk listener, which still holds
+     * the permit of its bulk.
+     */
+    private void retry(final IndexRequest indexRequest) {
+        try {
+            threadPool.generic().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        add(indexRequest);
+                    } catch (RuntimeException e) {
+                        logger.warn("failed to add request to the bulk processor", e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("failed to add request to the bulk processor", e);
+        }
+    }
+
+    /**
+     * Add an index request to the bulk processor and count it as in flight.
+     */
+    private void add(IndexRequest indexRequest) {
+        long bytes = indexRequest.source().length();
+        backpressure.added(bytes);
+        try {
+            bulkProcessor.add(indexRequest);
+        } catch (RuntimeException e) {
+            // not taken, so it never completes
+            backpressure.completed(1, bytes);
+            throw e;
+        }
+    }
+
+    private boolean spill(IndexRequest indexRequest) {
+        SyslogJournal journal = this.journal;
+        if (journal == null) {
+            return false;
+        }
+        try {
+            return journal.append(indexRequest.index(), indexRequest.type(), indexRequest.id(), indexRequest.source());
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("failed to write to journal", e);
+            return false;
+        }
+    }
+
+    private void deadLetter(IndexRequest indexRequest, BulkItemResponse.Failure failure) {
+        stats.deadLetter();
+        if (deadLetterIndex == null) {
+            logger.warn("failed to index message: [{}]: {}", failure.getStatus(), failure.getMessage());
+            return;
+        }
+        try {
+            XContentBuilder builder = jsonBuilder().startObject()
+                    .field("@timestamp", System.currentTimeMillis())
+                    .field("index", indexRequest.index())
+                    .field("type", indexRequest.type())
+                    .field("status", failure.getStatus().getStatus())
+                    .field("reason", failure.getMessage())
+                    .field("attempts", SyslogBulkRetry.attempt(indexRequest) + 1)
+                    .field("raw", raw(indexRequest.source()))
+                    .endObject();
+            IndexRequest deadLetter = new IndexRequest(deadLetterIndex)
+                    .type(DEAD_LETTER_TYPE)
+                    .opType(IndexRequest.OpType.INDEX)
+                    .source(builder);
+            deadLetter.putInContext(DEAD_LETTER, Boolean.TRUE);
+            retry(deadLetter);
+        } catch (IOException e) {
+            logger.warn("failed to build dead letter", e);
+        }
+    }
+
+    /**
+     * The source of a failed request as text, binary formats are converted to JSON if possible.
+     */
+    private static String raw(BytesReference source) {
+        XContentType type = XContentFactory.xContentType(source);
+        if (type != null && type != XContentType.JSON) {
+            try {
+                return XContentHelper.convertToJson(source, false);
+            } catch (Exception e) {
+                // not well-formed, keep the bytes
             }
         }
+        return source.toUtf8();
     }
 
     class BulkListener implements BulkProcessor.Listener {
 
+        private final Map<Long, InFlight> inFlight = new ConcurrentHashMap<>();
+
         @Override
         public void beforeBulk(long executionId, BulkRequest request) {
+            // the bulk action removes the requests of indices that could not be created, so keep them
+            inFlight.put(executionId, new InFlight(request));
             if (logger.isTraceEnabled()) {
                 logger.trace("[{}] executing [{}]/[{}]", executionId, request.numberOfActions(), new ByteSizeValue(request.estimatedSizeInBytes()));
             }
@@ -346,14 +1260,193 @@ public class SyslogService extends AbstractLifecycleComponent<SyslogService> {
             if (logger.isTraceEnabled()) {
                 logger.trace("[{}] executed  [{}]/[{}], took [{}]", executionId, request.numberOfActions(), new ByteSizeValue(request.estimatedSizeInBytes()), response.getTook());
             }
+            InFlight bulk = completed(executionId, request);
+            int failures = 0;
+            int retries = 0;
             if (response.hasFailures()) {
-                logger.warn("[{}] failed to execute bulk request: {}", executionId, response.buildFailureMessage());
+                List<ActionRequest<?>> requests = bulk.requests;
+                for (BulkItemResponse item : response) {
+                    if (!item.isFailed()) {
+                        continue;
+                    }
+                    failures++;
+                    ActionRequest<?> actionRequest = requests.get(item.getItemId());
+                    if (!(actionRequest instanceof IndexRequest)) {
+                        continue;
+                    }
+                    IndexRequest indexRequest = (IndexRequest) actionRequest;
+                    BulkItemResponse.Failure failure = item.getFailure();
+                    if (indexRequest.hasInContext(DEAD_LETTER)) {
+                        logger.warn("[{}] failed to index dead letter: {}", executionId, failure.getMessage());
+                    } else if (failure.getStatus() == RestStatus.TOO_MANY_REQUESTS && bulkRetry.retry(indexRequest)) {
+                        retries++;
+                    } else if (failure.getStatus() == RestStatus.TOO_MANY_REQUESTS && spill(indexRequest)) {
+                        retries++;
+                    } else {
+                        deadLetter(indexRequest, failure);
+                    }
+                }
+            }
+            stats.bulk(request.numberOfActions(), failures, System.nanoTime() - bulk.sentNanos());
+            if (failures > 0) {
+                stats.bulkRetries(retries);
+                logger.debug("[{}] {} failed items, {} retried", executionId, failures, retries);
             }
         }
 
         @Override
         public void afterBulk(long executionId, BulkRequest request, Throwable e) {
+            InFlight bulk = completed(executionId, request);
+            stats.bulk(request.numberOfActions(), request.numberOfActions(), System.nanoTime() - bulk.sentNanos());
             logger.warn("[{}] failed to execute bulk request", e, executionId);
+            SyslogJournal journal = SyslogService.this.journal;
+            if (journal != null) {
+                retryAfterMillis = System.currentTimeMillis() + flushInterval.millis();
+                int spilled = 0;
+                for (ActionRequest<?> actionRequest : bulk.requests) {
+                    if (actionRequest instanceof IndexRequest) {
+                        IndexRequest indexRequest = (IndexRequest) actionRequest;
+                        try {
+                            if (journal.append(indexRequest.index(), indexRequest.type(), indexRequest.id(), indexRequest.source())) {
+                                spilled++;
+                            }
+                        } catch (IOException | IllegalArgumentException ioe) {
+                            logger.warn("failed to write to journal", ioe);
+                        }
+                    }
+                }
+                logger.warn("[{}] spilled {} of {} actions to the journal", executionId, spilled, request.numberOfActions());
+            }
+        }
+
+        /**
+         * Called when the bulk processor holds a permit and sends the request, records the wait for the permit.
+         */
+        void sent(BulkRequest request) {
+            for (InFlight bulk : inFlight.values()) {
+                if (bulk.request == request) {
+                    long nanos = System.nanoTime();
+                    bulk.sentNanos = nanos;
+                    stats.bulkPermitWait(nanos - bulk.startNanos);
+                    return;
+                }
+            }
+        }
+
+        private InFlight completed(long executionId, BulkRequest request) {
+            InFlight bulk = inFlight.remove(executionId);
+            if (bulk == null) {
+                bulk = new InFlight(request);
+            }
+            backpressure.completed(bulk.requests.size(), bulk.bytes);
+            return bulk;
+        }
+    }
+
+    /**
+     * The requests of a bulk request in flight.
+     */
+    private static class InFlight {
+
+        final long startNanos = System.nanoTime();
+
+        final BulkRequest request;
+
+        final List<ActionRequest<?>> requests;
+
+        final long bytes;
+
+        volatile long sentNanos;
+
+        @SuppressWarnings("unchecked")
+        InFlight(BulkRequest request) {
+            this.request = request;
+            this.requests = new ArrayList<>((List<ActionRequest<?>>) (List<?>) request.requests());
+            long bytes = 0L;
+            for (ActionRequest<?> actionRequest : this.requests) {
+                if (actionRequest instanceof IndexRequest) {
+                    bytes += ((IndexRequest) actionRequest).source().length();
+                }
+            }
+            this.bytes = bytes;
+        }
+
+        long sentNanos() {
+            long nanos = sentNanos;
+            return nanos != 0L ? nanos : startNanos;
+        }
+    }
+
+    /**
+     * Replays the journal into the bulk processor while there is no backpressure.
+     */
+    class JournalDrainer implements Runnable {
+
+        private final SyslogJournal journal;
+
+        private final CountDownLatch terminated = new CountDownLatch(1);
+
+        private volatile boolean closed;
+
+        JournalDrainer(SyslogJournal journal) {
+            this.journal = journal;
+        }
+
+        @Override
+        public void run() {
+            try {
+                drain();
+            } finally {
+                terminated.countDown();
+            }
+        }
+
+        private void drain() {
+            long nextSync = System.currentTimeMillis() + journalSyncInterval.millis();
+            while (!closed) {
+                try {
+                    long now = System.currentTimeMillis();
+                    if (now >= nextSync) {
+                        journal.sync();
+                        nextSync = now + journalSyncInterval.millis();
+                    }
+                    SyslogJournal.Record record = null;
+                    if (!backpressure.isPaused() && now >= retryAfterMillis) {
+                        record = journal.read();
+                    }
+                    if (record == null) {
+                        Thread.sleep(10L);
+                        continue;
+                    }
+                    IndexRequest indexRequest = new IndexRequest(record.getIndex())
+                            .type(record.getType())
+                            .id(record.getId())
+                            .opType(IndexRequest.OpType.INDEX)
+                            .source(new BytesArray(record.getSource()));
+                    add(indexRequest);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    logger.warn("failed to replay journal", e);
+                }
+            }
+        }
+
+        /**
+         * Stop replaying and wait until the drainer has added the last record it has read.
+         *
+         * @param timeout the maximum time to wait in milliseconds
+         */
+        void close(long timeout) {
+            closed = true;
+            try {
+                if (!terminated.await(timeout, TimeUnit.MILLISECONDS)) {
+                    logger.warn("journal drainer did not terminate within {} ms", timeout);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 }
@@ -0,0 +1,378 @@
+package org.elasticsearch.syslog;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.syslog.MessageParser;
+import org.elasticsearch.common.syslog.Severity;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Ingestion statistics of the syslog service, per listener and for the node.
+ *
+ * Counters are striped, latencies are recorded into HDR histograms with microsecond resolution,
+ * so recording never takes a lock. Histograms are only merged when the statistics are rendered.
+ */
+public class SyslogStats implements ToXContent {
+
+    private final ConcurrentMap<String, ListenerStats> listeners = new ConcurrentHashMap<>();
+
+    private final CounterMetric bulkRequests = new CounterMetric();
+
+    private final CounterMetric bulkActions = new CounterMetric();
+
+    private final CounterMetric bulkFailures = new CounterMetric();
+
+    private final CounterMetric bulkRetries = new CounterMetric();
+
+    private final CounterMetric deadLetters = new CounterMetric();
+
+    private final Latency bulkPermitWait = new Latency();
+
+    private final Latency bulkRoundTrip = new Latency();
+
+    private final SyslogBackpressure backpressure;
+
+    private volatile SyslogWorkers workers;
+
+    private volatile SyslogJournal journal;
+
+    private volatile SyslogBulkRetry bulkRetry;
+
+    private volatile SyslogFilter filter;
+
+    private volatile SyslogRateLimiter rateLimiter;
+
+    private volatile SyslogResolver resolver;
+
+    private volatile SyslogInventory inventory;
+
+    public SyslogStats(SyslogBackpressure backpressure) {
+        this.backpressure = backpressure;
+    }
+
+    void setWorkers(SyslogWorkers workers) {
+        this.workers = workers;
+    }
+
+    void setJournal(SyslogJournal journal) {
+        this.journal = journal;
+    }
+
+    void setBulkRetry(SyslogBulkRetry bulkRetry) {
+        this.bulkRetry = bulkRetry;
+    }
+
+    void setFilter(SyslogFilter filter) {
+        this.filter = filter;
+    }
+
+    void setRateLimiter(SyslogRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    void setResolver(SyslogResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    void setInventory(SyslogInventory inventory) {
+        this.inventory = inventory;
+    }
+
+    public ListenerStats listener(String name) {
+        ListenerStats stats = listeners.get(name);
+        if (stats == null) {
+            ListenerStats newStats = new ListenerStats();
+            stats = listeners.putIfAbsent(name, newStats);
+            if (stats == null) {
+                stats = newStats;
+            }
+        }
+        return stats;
+    }
+
+    public void bulk(long actions, long failures, long nanos) {
+        bulkRequests.inc();
+        bulkActions.inc(actions);
+        bulkFailures.inc(failures);
+        bulkRoundTrip.record(nanos);
+    }
+
+    public void bulkPermitWait(long nanos) {
+        bulkPermitWait.record(nanos);
+    }
+
+    public void bulkRetries(long retries) {
+        bulkRetries.inc(retries);
+    }
+
+    public void deadLetter() {
+        deadLetters.inc();
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        ListenerStats total = new ListenerStats();
+        for (ListenerStats stats : listeners.values()) {
+            total.add(stats);
+        }
+        builder.startObject("total");
+        total.toXContent(builder, params);
+        SyslogWorkers workers = this.workers;
+        if (workers != null) {
+            builder.field("queued", workers.queued());
+        }
+        builder.startObject("shed");
+        builder.field("total", backpressure.getTotalDropped());
+        for (Severity severity : Severity.values()) {
+            builder.field(severity.label(), backpressure.getDropped(severity.numericalCode()));
+        }
+        builder.field("UNKNOWN", backpressure.getDropped(-1));
+        builder.endObject();
+        builder.endObject();
+        builder.startObject("bulk");
+        builder.field("requests", bulkRequests.count());
+        builder.field("actions", bulkActions.count());
+        builder.field("failures", bulkFailures.count());
+        builder.field("retries", bulkRetries.count());
+        SyslogBulkRetry bulkRetry = this.bulkRetry;
+        if (bulkRetry != null) {
+            builder.field("retries_pending", bulkRetry.getPending());
+            builder.field("retries_exhausted", bulkRetry.getExhausted());
+        }
+        builder.field("dead_letters", deadLetters.count());
+        builder.field("in_flight_bytes", backpressure.getBytes());
+        builder.field("in_flight_actions", backpressure.getActions());
+        builder.field("backpressure", backpressure.isPaused());
+        builder.field("backpressure_pauses", backpressure.getPauses());
+        bulkPermitWait.toXContent("permit_wait", builder);
+        bulkRoundTrip.toXContent("round_trip", builder);
+        builder.endObject();
+        SyslogJournal journal = this.journal;
+        if (journal != null) {
+            builder.startObject("journal");
+            builder.field("segments", journal.getSegments());
+            builder.field("size_in_bytes", journal.getSizeInBytes());
+            builder.field("appended", journal.getAppended());
+            builder.field("replayed", journal.getReplayed());
+            builder.field("backlog", journal.getBacklog());
+            builder.field("full", journal.isFull());
+            builder.endObject();
+        }
+        SyslogFilter filter = this.filter;
+        if (filter != null) {
+            builder.startObject("filter");
+            for (SyslogFilter.Rule rule : filter.getRules()) {
+                builder.startObject(rule.getName());
+                builder.field("action", rule.getAction().name().toLowerCase(Locale.ROOT));
+                builder.field("matched", rule.getMatched());
+                builder.endObject();
+            }
+            builder.endObject();
+        }
+        SyslogRateLimiter rateLimiter = this.rateLimiter;
+        if (rateLimiter != null) {
+            builder.startObject("rate_limit");
+            for (SyslogRateLimiter.Rule rule : rateLimiter.getRules()) {
+                builder.startObject(rule.getName());
+                builder.field("limited", rule.getLimited());
+                builder.field("sampled_out", rule.getSampledOut());
+                builder.endObject();
+            }
+            builder.endObject();
+        }
+        SyslogResolver resolver = this.resolver;
+        SyslogInventory inventory = this.inventory;
+        if (resolver != null || inventory != null) {
+            builder.startObject("enrich");
+            if (resolver != null) {
+                builder.startObject("dns");
+                builder.field("cache_size", resolver.size());
+                builder.field("hits", resolver.getHits());
+                builder.field("misses", resolver.getMisses());
+                builder.field("resolved", resolver.getResolved());
+                builder.field("failures", resolver.getFailures());
+                builder.field("rejected", resolver.getRejected());
+                builder.endObject();
+            }
+            if (inventory != null) {
+                builder.startObject("inventory");
+                builder.field("addresses", inventory.size());
+                builder.field("matched", inventory.getMatched());
+                builder.endObject();
+            }
+            builder.endObject();
+        }
+        builder.startObject("listeners");
+        for (Map.Entry<String, ListenerStats> entry : listeners.entrySet()) {
+            builder.startObject(entry.getKey());
+            entry.getValue().toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+
+    /**
+     * The statistics of a listener.
+     */
+    public static class ListenerStats implements MessageParser.Listener {
+
+        private final CounterMetric received = new CounterMetric();
+
+        private final CounterMetric bytes = new CounterMetric();
+
+        private final CounterMetric parseFailures = new CounterMetric();
+
+        private final CounterMetric jsonPayloads = new CounterMetric();
+
+        private final CounterMetric patternHits = new CounterMetric();
+
+        private final CounterMetric dropped = new CounterMetric();
+
+        private final CounterMetric filtered = new CounterMetric();
+
+        private final CounterMetric rateLimited = new CounterMetric();
+
+        private final CounterMetric repeats = new CounterMetric();
+
+        private final CounterMetric repeatSummaries = new CounterMetric();
+
+        private final CounterMetric multilineEvents = new CounterMetric();
+
+        private final CounterMetric joinedLines = new CounterMetric();
+
+        private final Latency queueWait = new Latency();
+
+        private final Latency parseTime = new Latency();
+
+        public void received(int bytes) {
+            this.received.inc();
+            this.bytes.inc(bytes);
+        }
+
+        public void dropped() {
+            dropped.inc();
+        }
+
+        public void filtered() {
+            filtered.inc();
+        }
+
+        public void rateLimited() {
+            rateLimited.inc();
+        }
+
+        public void repeated() {
+            repeats.inc();
+        }
+
+        public void repeatSummary() {
+            repeatSummaries.inc();
+        }
+
+        public void multilineEvent(int lines) {
+            multilineEvents.inc();
+            joinedLines.inc(lines - 1);
+        }
+
+        public void parseFailure() {
+            parseFailures.inc();
+        }
+
+        public void queueWait(long nanos) {
+            queueWait.record(nanos);
+        }
+
+        public void parseTime(long nanos) {
+            parseTime.record(nanos);
+        }
+
+        @Override
+        public void jsonPayload() {
+            jsonPayloads.inc();
+        }
+
+        @Override
+        public void patternMatch(String field) {
+            patternHits.inc();
+        }
+
+        void add(ListenerStats other) {
+            received.inc(other.received.count());
+            bytes.inc(other.bytes.count());
+            parseFailures.inc(other.parseFailures.count());
+            jsonPayloads.inc(other.jsonPayloads.count());
+            patternHits.inc(other.patternHits.count());
+            dropped.inc(other.dropped.count());
+            filtered.inc(other.filtered.count());
+            rateLimited.inc(other.rateLimited.count());
+            repeats.inc(other.repeats.count());
+            repeatSummaries.inc(other.repeatSummaries.count());
+            multilineEvents.inc(other.multilineEvents.count());
+            joinedLines.inc(other.joinedLines.count());
+            queueWait.add(other.queueWait);
+            parseTime.add(other.parseTime);
+        }
+
+        void toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.field("received", received.count());
+            builder.field("bytes", bytes.count());
+            builder.field("parse_failures", parseFailures.count());
+            builder.field("json_payloads", jsonPayloads.count());
+            builder.field("pattern_hits", patternHits.count());
+            builder.field("dropped", dropped.count());
+            builder.field("filtered", filtered.count());
+            builder.field("rate_limited", rateLimited.count());
+            builder.field("repeats", repeats.count());
+            builder.field("repeat_summaries", repeatSummaries.count());
+            builder.field("multiline_events", multilineEvents.count());
+            builder.field("joined_lines", joinedLines.count());
+            queueWait.toXContent("queue_wait", builder);
+            parseTime.toXContent("parse_time", builder);
+        }
+    }
+
+    /**
+     * A latency histogram in microseconds.
+     */
+    static class Latency {
+
+        private final Recorder recorder = new Recorder(2);
+
+        private final Histogram histogram = new Histogram(2);
+
+        void record(long nanos) {
+            recorder.recordValue(Math.max(0L, nanos / 1000L));
+        }
+
+        synchronized Histogram snapshot() {
+            histogram.add(recorder.getIntervalHistogram());
+            return histogram.copy();
+        }
+
+        synchronized void add(Latency other) {
+            histogram.add(other.snapshot());
+        }
+
+        void toXContent(String name, XContentBuilder builder) throws IOException {
+            Histogram h = snapshot();
+            builder.startObject(name);
+            builder.field("count", h.getTotalCount());
+            builder.field("mean_micros", h.getTotalCount() > 0 ? h.getMean() : 0.0d);
+            builder.field("p50_micros", h.getValueAtPercentile(50.0d));
+            builder.field("p90_micros", h.getValueAtPercentile(90.0d));
+            builder.field("p99_micros", h.getValueAtPercentile(99.0d));
+            builder.field("max_micros", h.getMaxValue());
+            builder.endObject();
+        }
+    }
+}
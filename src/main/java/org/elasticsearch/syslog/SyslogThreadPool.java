@@ -0,0 +1,74 @@
+package org.elasticsearch.syslog;
+
+import org.elasticsearch.common.settings.Settings;
+
+import java.util.Map;
+
+/**
+ * The thread pools of the syslog service, registered with the Elasticsearch thread pool.
+ *
+ * All pools are fixed and bounded. The threads are named after the pools, so they show up in hot threads
+ * and in the thread pool statistics with their rejections. The pools can be sized with the usual
+ * {@code threadpool.<name>.size} and {@code threadpool.<name>.queue_size} settings.
+ */
+public class SyslogThreadPool {
+
+    /**
+     * Accepts TCP connections.
+     */
+    public final static String BOSS = "syslog_boss";
+
+    /**
+     * Reads from TCP connections and UDP sockets.
+     */
+    public final static String WORKER = "syslog_worker";
+
+    /**
+     * Parses the messages and adds them to the bulk processor.
+     */
+    public final static String PARSER = "syslog_parser";
+
+    /**
+     * Resolves the host names of senders.
+     */
+    public final static String RESOLVER = "syslog_resolver";
+
+    private final static String PREFIX = "threadpool.";
+
+    private SyslogThreadPool() {
+    }
+
+    /**
+     * The default thread pool settings, derived from the syslog settings.
+     */
+    public static Settings settings(Settings settings) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int tcpWorkers = settings.getAsInt("tcp.worker", 4);
+        int udpListeners = 0;
+        Map<String, Settings> listeners = settings.getGroups("syslog.listeners");
+        if (listeners.isEmpty()) {
+            udpListeners = 1;
+        } else {
+            for (Settings listener : listeners.values()) {
+                if (listener.get("protocol", "udp,tcp").contains("udp")) {
+                    udpListeners++;
+                }
+            }
+        }
+        int parsers = Math.max(1, settings.getAsInt("syslog.workers", processors));
+        return Settings.settingsBuilder()
+                .put(PREFIX + BOSS + ".type", "fixed")
+                .put(PREFIX + BOSS + ".size", 1)
+                .put(PREFIX + BOSS + ".queue_size", 16)
+                .put(PREFIX + WORKER + ".type", "fixed")
+                .put(PREFIX + WORKER + ".size", tcpWorkers + udpListeners)
+                .put(PREFIX + WORKER + ".queue_size", 16)
+                .put(PREFIX + PARSER + ".type", "fixed")
+                .put(PREFIX + PARSER + ".size", parsers)
+                .put(PREFIX + PARSER + ".queue_size", 16)
+                .put(PREFIX + RESOLVER + ".type", "fixed")
+                .put(PREFIX + RESOLVER + ".size", 2)
+                .put(PREFIX + RESOLVER + ".queue_size", 1000)
+                .build();
+    }
+}
@@ -0,0 +1,189 @@
+package org.elasticsearch.syslog;
+
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Parser workers, decoupled from the I/O threads by one bounded ring buffer per worker.
+ *
+ * Frames are partitioned by the hash of the remote host address, so the messages of a host
+ * are always processed by the same worker, in the order they were received. Each worker
+ * has its own processor instance, so processors may keep worker local state without locking.
+ */
+public class SyslogWorkers {
+
+    private final static ESLogger logger = ESLoggerFactory.getLogger(SyslogWorkers.class.getName());
+
+    private final static int SPINS = 100;
+
+    private final static long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Worker[] workers;
+
+    private final CountDownLatch terminated;
+
+    private volatile boolean running = true;
+
+    public SyslogWorkers(List<? extends Processor> processors, int queueSize) {
+        this.workers = new Worker[processors.size()];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(processors.get(i), new SyslogRingBuffer(queueSize));
+        }
+        this.terminated = new CountDownLatch(workers.length);
+    }
+
+    public void start(Executor executor) {
+        for (Worker worker : workers) {
+            executor.execute(worker);
+        }
+    }
+
+    /**
+     * Stop the workers after the frames waiting in the ring buffers are processed.
+     *
+     * @param timeout the maximum time to wait for the workers in milliseconds
+     */
+    public void close(long timeout) {
+        running = false;
+        try {
+            if (!terminated.await(timeout, TimeUnit.MILLISECONDS)) {
+                logger.warn("syslog workers did not terminate within {} ms", timeout);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int size() {
+        return workers.length;
+    }
+
+    /**
+     * Add a frame to the ring buffer of the worker responsible for the remote address.
+     *
+     * @return false if the ring buffer is full
+     */
+    public boolean offer(SyslogListener listener, String protocol, SocketAddress localAddress, SocketAddress remoteAddress,
+                         ChannelBuffer buffer) {
+        return ringBuffer(remoteAddress).offer(listener, protocol, localAddress, remoteAddress, buffer);
+    }
+
+    /**
+     * Add a frame, waiting while the ring buffer of the worker is full.
+     *
+     * @return false if the workers were stopped while waiting
+     */
+    public boolean put(SyslogListener listener, String protocol, SocketAddress localAddress, SocketAddress remoteAddress,
+                       ChannelBuffer buffer) {
+        SyslogRingBuffer ringBuffer = ringBuffer(remoteAddress);
+        long parkNanos = 1000L;
+        while (!ringBuffer.offer(listener, protocol, localAddress, remoteAddress, buffer)) {
+            if (!running) {
+                return false;
+            }
+            LockSupport.parkNanos(parkNanos);
+            parkNanos = Math.min(parkNanos << 1, MAX_PARK_NANOS);
+        }
+        return true;
+    }
+
+    /**
+     * The number of frames waiting in all ring buffers.
+     */
+    public long queued() {
+        long queued = 0L;
+        for (Worker worker : workers) {
+            queued += worker.ringBuffer.size();
+        }
+        return queued;
+    }
+
+    private SyslogRingBuffer ringBuffer(SocketAddress remoteAddress) {
+        if (workers.length == 1) {
+            return workers[0].ringBuffer;
+        }
+        int h = remoteAddress instanceof InetSocketAddress && ((InetSocketAddress) remoteAddress).getAddress() != null ?
+                ((InetSocketAddress) remoteAddress).getAddress().hashCode() :
+                remoteAddress != null ? remoteAddress.hashCode() : 0;
+        h ^= h >>> 16;
+        return workers[(h & 0x7fffffff) % workers.length].ringBuffer;
+    }
+
+    /**
+     * Processes the frames of one worker. Called on the worker thread only.
+     */
+    public interface Processor {
+
+        void process(SyslogFrame frame) throws Exception;
+
+        /**
+         * Called while the ring buffer is empty.
+         */
+        void idle() throws Exception;
+
+        /**
+         * Called once after the last frame, before the worker terminates.
+         */
+        void close() throws Exception;
+    }
+
+    private class Worker implements Runnable {
+
+        private final Processor processor;
+
+        private final SyslogRingBuffer ringBuffer;
+
+        Worker(Processor processor, SyslogRingBuffer ringBuffer) {
+            this.processor = processor;
+            this.ringBuffer = ringBuffer;
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            try {
+                while (true) {
+                    SyslogFrame frame = ringBuffer.peek();
+                    if (frame == null) {
+                        if (!running) {
+                            break;
+                        }
+                        try {
+                            processor.idle();
+                        } catch (Exception e) {
+                            logger.error("worker failed while idle", e);
+                        }
+                        if (++idle > SPINS) {
+                            LockSupport.parkNanos(Math.min(1000L << Math.min(idle - SPINS, 10), MAX_PARK_NANOS));
+                        }
+                        continue;
+                    }
+                    idle = 0;
+                    try {
+                        processor.process(frame);
+                    } catch (Exception e) {
+                        logger.error("failed to process frame from {}", e, frame.getRemoteAddress());
+                    } finally {
+                        ringBuffer.release();
+                    }
+                }
+                try {
+                    processor.close();
+                } catch (Exception e) {
+                    logger.error("failed to close worker", e);
+                }
+            } finally {
+                terminated.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package org.xbib.elasticsearch;
+
+import org.elasticsearch.common.syslog.MessageParser;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class MessageParserTest {
+
+    @Test
+    public void testByteParser() throws Exception {
+        String[] messages = {
+                "<30>Jun 14 21:37:31 jorgprantesmbp.joerg com.apple.metadata.mdflagwriter[523]: Done with /Users/joerg",
+                "<13>Feb  5 17:32:18 10.0.0.99 Use the Ümlaut",
+                "<165>Aug 24 05:34:00 mymachine @cee:{\"a\":\"b\",\"n\":1}"
+        };
+        MessageParser parser = new MessageParser();
+        for (String message : messages) {
+            XContentBuilder fromString = jsonBuilder().startObject();
+            parser.parseMessage(message, fromString);
+            XContentBuilder fromBytes = jsonBuilder().startObject();
+            parser.parseMessage(ChannelBuffers.wrappedBuffer(message.getBytes(StandardCharsets.UTF_8)), fromBytes);
+            assertEquals(fromString.endObject().string(), fromBytes.endObject().string());
+        }
+    }
+
+    @Test
+    public void testJsonStreaming() throws Exception {
+        String[] messages = {
+                "<165>Aug 24 05:34:00 mymachine @cee:{\"a\":\"b\",\"n\":-1.5e3,\"o\":{\"l\":[1,true,null,\"\\u00fc\"]}}",
+                "<165>Aug 24 05:34:00 mymachine {\"a\":\"b\",\"o\":{\"l\":[1,2}}",
+                "<165>Aug 24 05:34:00 mymachine {\"a\":\"b\"} trailing"
+        };
+        MessageParser tree = new MessageParser().setJsonStreaming(false);
+        MessageParser streaming = new MessageParser();
+        for (String message : messages) {
+            byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+            XContentBuilder fromTree = jsonBuilder().startObject();
+            tree.parseMessage(ChannelBuffers.wrappedBuffer(bytes), fromTree);
+            XContentBuilder fromStreaming = jsonBuilder().startObject();
+            streaming.parseMessage(ChannelBuffers.wrappedBuffer(bytes), fromStreaming);
+            assertEquals(fromTree.endObject().string(), fromStreaming.endObject().string());
+        }
+    }
+
+    @Test
+    public void testBinaryFormats() throws Exception {
+        String message = "<165>Aug 24 05:34:00 mymachine @cee:{\"a\":\"b\",\"o\":{\"l\":[1,true,\"\\u00fc\"]}}";
+        MessageParser parser = new MessageParser();
+        XContentBuilder json = jsonBuilder().startObject();
+        parser.parseMessage(ChannelBuffers.wrappedBuffer(message.getBytes(StandardCharsets.UTF_8)), json);
+        String expected = json.endObject().string();
+        for (XContentType type : new XContentType[] { XContentType.SMILE, XContentType.CBOR }) {
+            XContentBuilder binary = XContentFactory.contentBuilder(type).startObject();
+            parser.parseMessage(ChannelBuffers.wrappedBuffer(message.getBytes(StandardCharsets.UTF_8)), binary);
+            binary.endObject();
+            assertEquals(type, XContentFactory.xContentType(binary.bytes()));
+            assertEquals(expected, XContentHelper.convertToJson(binary.bytes(), false));
+        }
+    }
+
+    @Test
+    public void testFieldNames() throws Exception {
+        String message = "<191>Aug 24 05:34:00 mymachine hello";
+        MessageParser parser = new MessageParser()
+                .setFieldName("host", "hostname")
+                .setFieldName("severity", "level");
+        XContentBuilder builder = jsonBuilder().startObject();
+        parser.parseMessage(ChannelBuffers.wrappedBuffer(message.getBytes(StandardCharsets.UTF_8)), builder);
+        Map<String, Object> map = XContentHelper.convertToMap(builder.endObject().bytes(), false).v2();
+        assertEquals("mymachine", map.get("hostname"));
+        assertEquals("LOCAL7", map.get("facility"));
+        assertEquals("DEBUG", map.get("level"));
+        assertEquals("hello", map.get("message"));
+        assertFalse(map.containsKey("host"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPriority() throws Exception {
+        new MessageParser().parseMessage(ChannelBuffers.wrappedBuffer("<192>Aug 24 05:34:00 mymachine hello"
+                .getBytes(StandardCharsets.UTF_8)), jsonBuilder().startObject());
+    }
+
+    @Test
+    public void testRfc5424() throws Exception {
+        String message = "<165>1 2003-10-11T22:14:15.003Z mymachine.example.com evntslog - ID47 " +
+                "[exampleSDID@32473 iut=\"3\" eventSource=\"Application\" eventID=\"1011\"]" +
+                "[examplePriority@32473 class=\"high\" path=\"c:\\\\temp \\] \\\"x\\\" \\y\"] 'su root' failed";
+        Map<String, Object> map = parse(message);
+        assertEquals("mymachine.example.com", map.get("host"));
+        assertEquals("evntslog", map.get("program"));
+        assertFalse(map.containsKey("pid"));
+        assertEquals("ID47", map.get("msgid"));
+        Map<?, ?> sd = (Map<?, ?>) map.get("structured_data");
+        Map<?, ?> example = (Map<?, ?>) sd.get("exampleSDID@32473");
+        assertEquals("3", example.get("iut"));
+        assertEquals("Application", example.get("eventSource"));
+        assertEquals("1011", example.get("eventID"));
+        assertEquals("c:\\temp ] \"x\" \\y", ((Map<?, ?>) sd.get("examplePriority@32473")).get("path"));
+        assertEquals("'su root' failed", map.get("message"));
+    }
+
+    @Test
+    public void testRfc5424WithoutStructuredData() throws Exception {
+        Map<String, Object> map = parse("<34>1 2003-10-11T22:14:15.003Z host su 42 - - \uFEFF@cee:{\"a\":\"b\"}");
+        assertEquals("su", map.get("program"));
+        assertEquals("42", map.get("pid"));
+        assertFalse(map.containsKey("msgid"));
+        assertFalse(map.containsKey("structured_data"));
+        assertEquals("b", map.get("a"));
+        assertEquals("{\"a\":\"b\"}", map.get("message"));
+        map = parse("<34>1 2003-10-11T22:14:15.003Z host su 42 - -");
+        assertEquals("", map.get("message"));
+    }
+
+    @Test
+    public void testRfc5424NilHostname() throws Exception {
+        Map<String, Object> map = parse("<34>1 2003-10-11T22:14:15.003Z - su - - - text");
+        assertFalse(map.containsKey("host"));
+        assertEquals("su", map.get("program"));
+        assertEquals("text", map.get("message"));
+        // a host named "-" in RFC 3164 is kept
+        map = parse("<34>Oct 11 22:14:15 - su: text");
+        assertEquals("-", map.get("host"));
+    }
+
+    @Test
+    public void testMalformedStructuredData() throws Exception {
+        String[] messages = {
+                "<34>1 2003-10-11T22:14:15.003Z host app - - [id k=\"v] text",
+                "<34>1 2003-10-11T22:14:15.003Z host app - - [id k=v] text",
+                "<34>1 2003-10-11T22:14:15.003Z host app - - [id k=\"v\"]text",
+                "<34>1 2003-10-11T22:14:15.003Z host app"
+        };
+        for (String message : messages) {
+            Map<String, Object> map = parse(message);
+            assertFalse(message, map.containsKey("structured_data"));
+            assertFalse(message, map.containsKey("program"));
+            assertEquals(message, message.substring(message.indexOf("host ") + 5), map.get("message"));
+        }
+    }
+
+    @Test
+    public void testRfc3164Tag() throws Exception {
+        Map<String, Object> map = parse("<38>Oct 11 22:14:15 mymachine sshd[1234]: Accepted publickey");
+        assertEquals("sshd", map.get("program"));
+        assertEquals("1234", map.get("pid"));
+        assertEquals("sshd[1234]: Accepted publickey", map.get("message"));
+        map = parse("<38>Oct 11 22:14:15 mymachine postfix/smtpd: connect");
+        assertEquals("postfix/smtpd", map.get("program"));
+        assertFalse(map.containsKey("pid"));
+        for (String message : new String[] {
+                "<13>Feb  5 17:32:18 10.0.0.99 Use the Umlaut: here",
+                "<13>Feb  5 17:32:18 10.0.0.99 {\"a\":\"b\"}",
+                "<13>Feb  5 17:32:18 10.0.0.99 app[12: text"
+        }) {
+            assertFalse(message, parse(message).containsKey("program"));
+        }
+    }
+
+    private static Map<String, Object> parse(String message) throws Exception {
+        MessageParser parser = new MessageParser();
+        XContentBuilder fromBytes = jsonBuilder().startObject();
+        parser.parseMessage(ChannelBuffers.wrappedBuffer(message.getBytes(StandardCharsets.UTF_8)), fromBytes);
+        XContentBuilder fromString = jsonBuilder().startObject();
+        parser.parseMessage(message, fromString);
+        assertEquals(fromBytes.endObject().string(), fromString.endObject().string());
+        return XContentHelper.convertToMap(fromBytes.bytes(), true).v2();
+    }
+}
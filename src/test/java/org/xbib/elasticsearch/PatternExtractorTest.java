@@ -0,0 +1,76 @@
+package org.xbib.elasticsearch;
+
+import org.elasticsearch.common.syslog.Facility;
+import org.elasticsearch.common.syslog.PatternExtractor;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.junit.Assert.assertEquals;
+
+public class PatternExtractorTest {
+
+    private final static String[] PATTERNS = {
+            "PHP (.*?):", "in (.*?) on line", "on line (.*)$", "variable: (\\w+)", "\\[(\\d+)\\]", "ab*(c)",
+            "x{0,2}yz(.)", "(foo|bar)", "(?i)error (\\w+)", "\\Qa.b\\E(.*)", "user=(\\S+) from ([\\d.]+)",
+            "Failed password for (?:invalid user )?(\\S+)", "\\d{3}-abc(.)"
+    };
+
+    private final static String[] MESSAGES = {
+            "php[32105]: PHP Notice:  Undefined variable: x in /var/www/index.php on line 42",
+            "sshd[99]: Failed password for invalid user admin from 10.0.0.1",
+            "sshd[99]: Failed password for root user=root from 10.0.0.1",
+            "app: ERROR disk full, abbbc and yzq, a.b.c, 123-abcd",
+            "app: no match at all",
+            "bar",
+            "",
+            "kernel: ümlaut in Straße on line 7"
+    };
+
+    @Test
+    public void testSameAsSequentialMatching() throws Exception {
+        Map<String, Pattern> patterns = new LinkedHashMap<>();
+        PatternExtractor.Builder builder = PatternExtractor.builder();
+        for (int i = 0; i < PATTERNS.length; i++) {
+            patterns.put("f" + i, Pattern.compile(PATTERNS[i]));
+            builder.add("f" + i, patterns.get("f" + i));
+        }
+        PatternExtractor extractor = builder.build();
+        for (String message : MESSAGES) {
+            XContentBuilder expected = jsonBuilder().startObject();
+            for (Map.Entry<String, Pattern> entry : patterns.entrySet()) {
+                Matcher m = entry.getValue().matcher(message);
+                if (m.find()) {
+                    expected.field(entry.getKey(), m.group(1));
+                }
+            }
+            XContentBuilder actual = jsonBuilder().startObject();
+            extractor.extract(message, Facility.USER.numericalCode(), actual, null);
+            assertEquals(message, expected.endObject().string(), actual.endObject().string());
+        }
+    }
+
+    @Test
+    public void testScope() throws Exception {
+        PatternExtractor extractor = PatternExtractor.builder()
+                .add("pid", Pattern.compile("\\[(\\d+)\\]"), null, Arrays.asList("sshd"))
+                .add("line", Pattern.compile("on line (\\d+)"), Arrays.asList(Facility.LOCAL0, Facility.USER), null)
+                .build();
+        String message = "php[32105]: PHP Notice: x in index.php on line 42";
+        XContentBuilder builder = jsonBuilder().startObject();
+        extractor.extract(message, Facility.USER.numericalCode(), builder, null);
+        assertEquals("{\"line\":\"42\"}", builder.endObject().string());
+        builder = jsonBuilder().startObject();
+        extractor.extract(message, Facility.DAEMON.numericalCode(), builder, null);
+        assertEquals("{}", builder.endObject().string());
+        builder = jsonBuilder().startObject();
+        extractor.extract("sshd[7]: on line 1", Facility.DAEMON.numericalCode(), builder, null);
+        assertEquals("{\"pid\":\"7\"}", builder.endObject().string());
+    }
+}
@@ -0,0 +1,53 @@
+package org.xbib.elasticsearch;
+
+import org.elasticsearch.action.admin.cluster.node.info.NodeInfo;
+import org.elasticsearch.action.admin.cluster.node.info.NodesInfoResponse;
+import org.elasticsearch.common.io.Streams;
+import org.elasticsearch.common.transport.InetSocketTransportAddress;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.junit.Test;
+
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.xbib.elasticsearch.SyslogStatsTest.map;
+import static org.xbib.elasticsearch.SyslogStatsTest.number;
+
+public class RestSyslogStatsActionTest extends NodeTestUtils {
+
+    @Test
+    public void testStats() throws Exception {
+        NodesInfoResponse response = client("1").admin().cluster().prepareNodesInfo().setHttp(true).get();
+        NodeInfo info = response.getNodes()[0];
+        InetSocketAddress address = ((InetSocketTransportAddress) info.getHttp().address().publishAddress()).address();
+        URL url = new URL("http", address.getHostString(), address.getPort(), "/_syslog/stats");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        assertEquals(200, connection.getResponseCode());
+        String body;
+        try (InputStreamReader reader = new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)) {
+            body = Streams.copyToString(reader);
+        }
+        Map<String, Object> map = JsonXContent.jsonXContent.createParser(body).map();
+        Map<String, Object> node = map(map(map, "nodes"), info.getNode().id());
+        assertEquals(info.getNode().name(), node.get("name"));
+        Map<String, Object> listeners = map(node, "listeners");
+        assertEquals(2, listeners.size());
+        for (String name : new String[]{"udp", "tcp"}) {
+            Map<String, Object> listener = map(listeners, name);
+            assertEquals(0, number(listener, "received"));
+            assertEquals(0, number(map(listener, "queue_wait"), "count"));
+            assertEquals(0, number(map(listener, "parse_time"), "count"));
+        }
+        assertEquals(0, number(map(node, "total"), "received"));
+        Map<String, Object> bulk = map(node, "bulk");
+        assertEquals(0, number(bulk, "requests"));
+        assertTrue(bulk.containsKey("permit_wait"));
+        assertTrue(bulk.containsKey("round_trip"));
+    }
+}
@@ -0,0 +1,123 @@
+package org.xbib.elasticsearch;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.syslog.Severity;
+import org.elasticsearch.syslog.SyslogBackpressure;
+import org.elasticsearch.syslog.SyslogJournal;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SyslogBackpressureTest {
+
+    @Test
+    public void testBytesWatermarks() {
+        SyslogBackpressure backpressure = new SyslogBackpressure(100L, 50L, 1000L, 500L, Severity.INFORMATIONAL);
+        backpressure.added(60L);
+        assertFalse(backpressure.isPaused());
+        backpressure.added(60L);
+        assertTrue(backpressure.isPaused());
+        assertEquals(1, backpressure.getPauses());
+        backpressure.added(10L);
+        assertEquals(1, backpressure.getPauses());
+        // between the watermarks
+        backpressure.completed(1, 60L);
+        assertTrue(backpressure.isPaused());
+        backpressure.completed(1, 20L);
+        assertFalse(backpressure.isPaused());
+        assertEquals(50L, backpressure.getBytes());
+        assertEquals(1L, backpressure.getActions());
+    }
+
+    @Test
+    public void testActionsWatermarks() {
+        SyslogBackpressure backpressure = new SyslogBackpressure(1000L, 500L, 10L, 5L, Severity.INFORMATIONAL);
+        for (int i = 0; i < 10; i++) {
+            backpressure.added(1L);
+        }
+        assertFalse(backpressure.isPaused());
+        backpressure.added(1L);
+        assertTrue(backpressure.isPaused());
+        backpressure.completed(5, 5L);
+        assertTrue(backpressure.isPaused());
+        backpressure.completed(1, 1L);
+        assertFalse(backpressure.isPaused());
+    }
+
+    @Test
+    public void testShed() {
+        SyslogBackpressure backpressure = new SyslogBackpressure(100L, 50L, 1000L, 500L, Severity.INFORMATIONAL);
+        assertFalse(backpressure.shouldShed(Severity.DEBUG.numericalCode()));
+        backpressure.added(200L);
+        assertTrue(backpressure.shouldShed(Severity.DEBUG.numericalCode()));
+        assertTrue(backpressure.shouldShed(Severity.INFORMATIONAL.numericalCode()));
+        assertTrue(backpressure.shouldShed(-1));
+        assertFalse(backpressure.shouldShed(Severity.ERROR.numericalCode()));
+        backpressure.drop(Severity.DEBUG.numericalCode());
+        backpressure.drop(Severity.DEBUG.numericalCode());
+        backpressure.drop(-1);
+        assertEquals(2, backpressure.getDropped(Severity.DEBUG.numericalCode()));
+        assertEquals(1, backpressure.getDropped(-1));
+        assertEquals(0, backpressure.getDropped(Severity.ERROR.numericalCode()));
+        assertEquals(3, backpressure.getTotalDropped());
+    }
+
+    @Test
+    public void testNoShedWhileSpilling() throws IOException {
+        Path path = Files.createTempDirectory("journal");
+        try (SyslogJournal journal = new SyslogJournal(path, 1024, 1024, false)) {
+            SyslogBackpressure backpressure = new SyslogBackpressure(100L, 50L, 1000L, 500L, Severity.INFORMATIONAL);
+            backpressure.setJournal(journal);
+            backpressure.added(200L);
+            assertTrue(backpressure.isPaused());
+            assertFalse(backpressure.shouldShed(Severity.DEBUG.numericalCode()));
+            while (journal.append("syslog", "syslog", new BytesArray(new byte[100]))) {
+                // fill the journal
+            }
+            assertTrue(journal.isFull());
+            assertTrue(backpressure.shouldShed(Severity.DEBUG.numericalCode()));
+        } finally {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                for (Path file : stream) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testConcurrentAddedAndCompleted() throws InterruptedException {
+        final SyslogBackpressure backpressure = new SyslogBackpressure(100L, 50L, 1000L, 500L, Severity.INFORMATIONAL);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 100000; i++) {
+                        backpressure.added(40L);
+                        backpressure.completed(1, 40L);
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0L, backpressure.getBytes());
+        assertEquals(0L, backpressure.getActions());
+        // the state follows the counters, whatever the interleaving was
+        assertFalse(backpressure.isPaused());
+    }
+}
@@ -0,0 +1,75 @@
+package org.xbib.elasticsearch;
+
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.syslog.SyslogBulkRetry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SyslogBulkRetryTest {
+
+    private ScheduledExecutorService scheduler;
+
+    private final BlockingQueue<IndexRequest> retried = new LinkedBlockingQueue<>();
+
+    private final SyslogBulkRetry.Sink sink = new SyslogBulkRetry.Sink() {
+        @Override
+        public void retry(IndexRequest request) {
+            retried.add(request);
+        }
+    };
+
+    @Before
+    public void createScheduler() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void shutdownScheduler() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testRetries() throws InterruptedException {
+        SyslogBulkRetry retry = new SyslogBulkRetry(TimeValue.timeValueMillis(1), TimeValue.timeValueMillis(20), 3, 10,
+                scheduler, sink);
+        IndexRequest request = new IndexRequest("syslog", "syslog");
+        for (int i = 1; i <= 3; i++) {
+            assertTrue(retry.retry(request));
+            assertSame(request, retried.poll(1, TimeUnit.SECONDS));
+            assertEquals(i, SyslogBulkRetry.attempt(request));
+        }
+        assertFalse(retry.retry(request));
+        assertNull(retried.poll(50, TimeUnit.MILLISECONDS));
+        assertEquals(3, retry.getRetried());
+        assertEquals(1, retry.getExhausted());
+        assertEquals(0, retry.getPending());
+    }
+
+    @Test
+    public void testBudget() throws InterruptedException {
+        SyslogBulkRetry retry = new SyslogBulkRetry(TimeValue.timeValueSeconds(10), TimeValue.timeValueSeconds(10), 3, 2,
+                scheduler, sink);
+        int n = 0;
+        while (retry.retry(new IndexRequest("syslog", "syslog")) && n < 100) {
+            n++;
+        }
+        // a retry drawn with zero delay frees its budget immediately
+        assertTrue(n >= 2);
+        assertTrue(retry.getPending() <= 2);
+        assertEquals(1, retry.getExhausted());
+    }
+}
@@ -0,0 +1,71 @@
+package org.xbib.elasticsearch;
+
+import org.elasticsearch.syslog.SyslogDatagramReceiver;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class SyslogDatagramReceiverTest {
+
+    private final static int DATAGRAM_SIZE = 8192;
+
+    @Test
+    public void testSlabsAreReused() throws Exception {
+        final BlockingQueue<ChannelBuffer> received = new LinkedBlockingQueue<>();
+        SyslogDatagramReceiver receiver = new SyslogDatagramReceiver(new InetSocketAddress("127.0.0.1", 0),
+                1024 * 1024, 16, new SyslogDatagramReceiver.Listener() {
+            @Override
+            public void onDatagram(SocketAddress localAddress, SocketAddress remoteAddress, ChannelBuffer buffer) {
+                received.add(buffer);
+            }
+        });
+        Thread thread = new Thread(receiver);
+        thread.start();
+        try (DatagramChannel sender = DatagramChannel.open()) {
+            // about four slabs of datagrams, each released before the next one is sent
+            for (int i = 0; i < 128; i++) {
+                send(sender, receiver.getLocalAddress(), i);
+                ChannelBuffer buffer = received.poll(10, TimeUnit.SECONDS);
+                assertNotNull(buffer);
+                assertEquals(DATAGRAM_SIZE, buffer.readableBytes());
+                assertEquals((byte) i, buffer.getByte(0));
+                assertEquals((byte) i, buffer.getByte(DATAGRAM_SIZE - 1));
+                SyslogDatagramReceiver.release(buffer);
+            }
+            assertEquals(1, receiver.getSlabs());
+            // a slab with a slice in use is not reused
+            send(sender, receiver.getLocalAddress(), 0);
+            ChannelBuffer held = received.poll(10, TimeUnit.SECONDS);
+            for (int i = 1; i < 64; i++) {
+                send(sender, receiver.getLocalAddress(), i);
+                ChannelBuffer buffer = received.poll(10, TimeUnit.SECONDS);
+                assertEquals((byte) i, buffer.getByte(0));
+                SyslogDatagramReceiver.release(buffer);
+            }
+            assertEquals(2, receiver.getSlabs());
+            assertEquals((byte) 0, held.getByte(DATAGRAM_SIZE - 1));
+            SyslogDatagramReceiver.release(held);
+        } finally {
+            receiver.close();
+            thread.join();
+        }
+    }
+
+    private static void send(DatagramChannel sender, SocketAddress address, int i) throws IOException {
+        byte[] bytes = new byte[DATAGRAM_SIZE];
+        Arrays.fill(bytes, (byte) i);
+        sender.send(ByteBuffer.wrap(bytes), address);
+    }
+}
@@ -0,0 +1,109 @@
+package org.xbib.elasticsearch;
+
+import org.elasticsearch.syslog.SyslogDeduplicator;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SyslogDeduplicatorTest {
+
+    private final List<String> reported = new ArrayList<>();
+
+    private final SyslogDeduplicator.Listener listener = new SyslogDeduplicator.Listener() {
+        @Override
+        public void repeated(Object first, int repeats, long firstSeen, long lastSeen) {
+            reported.add(first + ":" + repeats + ":" + firstSeen + ":" + lastSeen);
+        }
+    };
+
+    @Test
+    public void testKey() {
+        assertEquals(key("<13>Oct 16 10:00:00 host sshd[1]: failed"), key("<13>Oct 16 10:00:07 host sshd[1]: failed"));
+        assertEquals(key("<13>1 2016-10-16T10:00:00Z host sshd 1 - - failed"),
+                key("<13>1 2016-10-16T10:00:07.123Z host sshd 1 - - failed"));
+        assertNotEquals(key("<13>Oct 16 10:00:00 host sshd[1]: failed"), key("<14>Oct 16 10:00:00 host sshd[1]: failed"));
+        assertNotEquals(key("<13>Oct 16 10:00:00 host sshd[1]: failed"), key("<13>Oct 16 10:00:00 host sshd[1]: failes"));
+        assertNotEquals(SyslogDeduplicator.key(buffer("<13>Oct 16 10:00:00 host sshd[1]: failed"), 1L),
+                SyslogDeduplicator.key(buffer("<13>Oct 16 10:00:00 host sshd[1]: failed"), 2L));
+    }
+
+    @Test
+    public void testBurst() {
+        SyslogDeduplicator deduplicator = new SyslogDeduplicator(1000L, 16);
+        long key = key("<13>Oct 16 10:00:00 host sshd[1]: failed");
+        assertFalse(deduplicator.isRepeat(key, 0L, listener));
+        deduplicator.attach("first");
+        assertTrue(deduplicator.isRepeat(key, 100L, listener));
+        assertTrue(deduplicator.isRepeat(key, 200L, listener));
+        deduplicator.expire(500L, listener);
+        assertTrue(reported.isEmpty());
+        deduplicator.expire(1000L, listener);
+        assertEquals(1, reported.size());
+        assertEquals("first:2:0:200", reported.get(0));
+        assertEquals(0, deduplicator.size());
+        // a new window
+        assertFalse(deduplicator.isRepeat(key, 1100L, listener));
+    }
+
+    @Test
+    public void testNewWindowWithoutExpire() {
+        SyslogDeduplicator deduplicator = new SyslogDeduplicator(1000L, 16);
+        long key = key("<13>Oct 16 10:00:00 host sshd[1]: failed");
+        assertFalse(deduplicator.isRepeat(key, 0L, listener));
+        deduplicator.attach("first");
+        assertTrue(deduplicator.isRepeat(key, 10L, listener));
+        assertFalse(deduplicator.isRepeat(key, 1000L, listener));
+        deduplicator.attach("second");
+        assertEquals(1, reported.size());
+        assertEquals("first:1:0:10", reported.get(0));
+        deduplicator.expire(Long.MAX_VALUE, listener);
+        assertEquals(1, reported.size());
+    }
+
+    @Test
+    public void testCapacity() {
+        SyslogDeduplicator deduplicator = new SyslogDeduplicator(1000L, 16);
+        for (int i = 0; i < 100; i++) {
+            long key = key("<13>Oct 16 10:00:00 host sshd[1]: message " + i);
+            assertFalse(deduplicator.isRepeat(key, i, listener));
+            deduplicator.attach("message " + i);
+            assertTrue(deduplicator.size() <= 16);
+        }
+        for (int i = 0; i < 16; i++) {
+            assertTrue(deduplicator.isRepeat(key("<13>Oct 16 10:00:00 host sshd[1]: message " + i), 200L, listener));
+        }
+        deduplicator.expire(Long.MAX_VALUE, listener);
+        assertEquals(16, reported.size());
+        assertEquals(0, deduplicator.size());
+    }
+
+    @Test
+    public void testExpireKeepsProbes() {
+        SyslogDeduplicator deduplicator = new SyslogDeduplicator(1000L, 256);
+        for (int i = 0; i < 256; i++) {
+            assertFalse(deduplicator.isRepeat(key("<13>message " + i), i % 2 == 0 ? 0L : 600L, listener));
+        }
+        deduplicator.expire(1000L, listener);
+        assertEquals(128, deduplicator.size());
+        for (int i = 1; i < 256; i += 2) {
+            assertTrue(deduplicator.isRepeat(key("<13>message " + i), 1000L, listener));
+        }
+    }
+
+    private static long key(String message) {
+        return SyslogDeduplicator.key(buffer(message), 0L);
+    }
+
+    private static ChannelBuffer buffer(String message) {
+        return ChannelBuffers.wrappedBuffer(message.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,76 @@
+package org.xbib.elasticsearch;
+
+import org.elasticsearch.common.syslog.Facility;
+import org.elasticsearch.common.syslog.Severity;
+import org.elasticsearch.syslog.SyslogAddressTrie;
+import org.elasticsearch.syslog.SyslogFilter;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class SyslogFilterTest {
+
+    @Test
+    public void testAddressTrie() throws Exception {
+        SyslogAddressTrie trie = new SyslogAddressTrie();
+        trie.add("10.0.0.0/8", 1);
+        trie.add("10.1.0.0/16", 2);
+        trie.add("192.168.1.7", 3);
+        trie.add("2001:db8::/32", 4);
+        assertEquals(1, trie.get(InetAddress.getByName("10.2.3.4")));
+        assertEquals(2, trie.get(InetAddress.getByName("10.1.3.4")));
+        assertEquals(3, trie.get(InetAddress.getByName("192.168.1.7")));
+        assertEquals(-1, trie.get(InetAddress.getByName("192.168.1.8")));
+        assertEquals(-1, trie.get(InetAddress.getByName("11.0.0.1")));
+        assertEquals(4, trie.get(InetAddress.getByName("2001:db8::1")));
+        assertEquals(-1, trie.get(InetAddress.getByName("2001:db9::1")));
+        assertEquals(2, trie.get(new InetSocketAddress("10.1.0.1", 514)));
+        SyslogAddressTrie all = new SyslogAddressTrie();
+        all.add("0.0.0.0/0", 5);
+        assertEquals(5, all.get(InetAddress.getByName("8.8.8.8")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidAddress() {
+        new SyslogAddressTrie().add("localhost/8", 0);
+    }
+
+    @Test
+    public void testRules() {
+        SyslogFilter.Rule keep = new SyslogFilter.Rule("1_keep", SyslogFilter.Action.KEEP,
+                Collections.<Facility>emptyList(), Collections.<Severity>emptyList(),
+                Collections.singletonList("10.0.0.1"), null, null);
+        SyslogFilter.Rule drop = new SyslogFilter.Rule("2_drop", SyslogFilter.Action.DROP,
+                Collections.singletonList(Facility.LOCAL7), Arrays.asList(Severity.DEBUG, Severity.INFORMATIONAL),
+                Collections.<String>emptyList(), null, null);
+        SyslogFilter.Rule route = new SyslogFilter.Rule("3_route", SyslogFilter.Action.ROUTE,
+                Collections.<Facility>emptyList(), Collections.singletonList(Severity.DEBUG),
+                Collections.singletonList("10.0.0.0/8"), "debug", null);
+        SyslogFilter filter = new SyslogFilter(Arrays.asList(keep, drop, route));
+        InetSocketAddress a = new InetSocketAddress("10.0.0.1", 514);
+        InetSocketAddress b = new InetSocketAddress("10.0.0.2", 514);
+        InetSocketAddress c = new InetSocketAddress("172.16.0.1", 514);
+        assertSame(keep, filter.match(a, buffer("<191>Oct 16 10:00:00 host app: local7 debug")));
+        assertSame(drop, filter.match(b, buffer("<191>Oct 16 10:00:00 host app: local7 debug")));
+        assertSame(drop, filter.match(b, buffer("<190>Oct 16 10:00:00 host app: local7 info")));
+        assertNull(filter.match(b, buffer("<189>Oct 16 10:00:00 host app: local7 notice")));
+        assertSame(route, filter.match(b, buffer("<15>Oct 16 10:00:00 host app: user debug")));
+        assertNull(filter.match(c, buffer("<15>Oct 16 10:00:00 host app: user debug")));
+        assertNull(filter.match(b, buffer("no priority")));
+        assertSame(keep, filter.match(a, buffer("no priority")));
+    }
+
+    private static ChannelBuffer buffer(String message) {
+        return ChannelBuffers.wrappedBuffer(message.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,45 @@
+package org.xbib.elasticsearch;
+
+import org.elasticsearch.syslog.SyslogFrameDecoder;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SyslogFrameDecoderTest {
+
+    @Test
+    public void testFraming() throws Exception {
+        DecoderEmbedder<List<ChannelBuffer>> embedder = new DecoderEmbedder<>(new SyslogFrameDecoder(32));
+        embedder.offer(buffer("<13>first\n<13>sec"));
+        embedder.offer(buffer("ond\r\n11 <13>counted5"));
+        embedder.offer(buffer(" <13>a39 <13>too long for the maximum frame size"));
+        embedder.offer(buffer("<13>this line is too long for the maximum"));
+        embedder.offer(buffer(" frame size\n<13>last"));
+        embedder.finish();
+        List<String> frames = new ArrayList<>();
+        List<ChannelBuffer> batch;
+        while ((batch = embedder.poll()) != null) {
+            for (ChannelBuffer frame : batch) {
+                frames.add(frame.toString(StandardCharsets.UTF_8));
+            }
+        }
+        List<String> expected = new ArrayList<>();
+        expected.add("<13>first");
+        expected.add("<13>second");
+        expected.add("<13>counted");
+        expected.add("<13>a");
+        expected.add("<13>last");
+        assertEquals(expected, frames);
+    }
+
+    private static ChannelBuffer buffer(String s) {
+        return ChannelBuffers.wrappedBuffer(s.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,69 @@
+package org.xbib.elasticsearch;
+
+import org.elasticsearch.syslog.SyslogIdGenerator;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SyslogIdGeneratorTest {
+
+    @Test
+    public void testFlake() {
+        SyslogIdGenerator.Flake flake = new SyslogIdGenerator.Flake(42);
+        String previous = flake.id(1000L);
+        assertEquals(15, previous.length());
+        for (int i = 0; i < 10000; i++) {
+            // the clock goes back at times
+            String id = flake.id(1000L + i / 100 - (i % 500 == 0 ? 5 : 0));
+            assertTrue(previous + " < " + id, previous.compareTo(id) < 0);
+            previous = id;
+        }
+        assertTrue(flake.id(2000L).compareTo(new SyslogIdGenerator.Flake(0).id(2001L)) < 0);
+    }
+
+    @Test
+    public void testFlakeSignBit() {
+        SyslogIdGenerator.Flake flake = new SyslogIdGenerator.Flake(42);
+        String previous = flake.id((1L << 41) - 1);
+        for (long millis : new long[]{1L << 41, (1L << 41) + 1, (1L << 41) - 5, (1L << 42) - 1}) {
+            String id = flake.id(millis);
+            assertTrue(previous + " < " + id, previous.compareTo(id) < 0);
+            previous = id;
+        }
+        // the time is kept, not only the order
+        assertEquals(new SyslogIdGenerator.Flake(42).id((1L << 42) - 1).substring(0, 7), previous.substring(0, 7));
+        assertTrue(new SyslogIdGenerator.Flake(0).id(1000L).compareTo(new SyslogIdGenerator.Flake(0).id(1L << 41)) < 0);
+    }
+
+    @Test
+    public void testContentHash() {
+        SyslogIdGenerator hash = SyslogIdGenerator.create("hash");
+        InetSocketAddress a = new InetSocketAddress("10.0.0.1", 40000);
+        String id = hash.id(a, buffer("<13>Oct 16 10:00:00 host app: message"));
+        assertEquals(20, id.length());
+        // another port of the same sender
+        assertEquals(id, hash.id(new InetSocketAddress("10.0.0.1", 40001), buffer("<13>Oct 16 10:00:00 host app: message")));
+        assertNotEquals(id, hash.id(new InetSocketAddress("10.0.0.2", 40000), buffer("<13>Oct 16 10:00:00 host app: message")));
+        assertNotEquals(id, hash.id(a, buffer("<13>Oct 16 10:00:01 host app: message")));
+        ChannelBuffer direct = ChannelBuffers.directBuffer(64);
+        direct.writeBytes("<13>Oct 16 10:00:00 host app: message".getBytes(StandardCharsets.UTF_8));
+        assertEquals(id, hash.id(a, direct));
+    }
+
+    @Test
+    public void testAuto() {
+        assertNull(SyslogIdGenerator.create("auto"));
+    }
+
+    private static ChannelBuffer buffer(String message) {
+        return ChannelBuffers.wrappedBuffer(message.getBytes(StandardCharsets.UTF_8));
+    }
+}
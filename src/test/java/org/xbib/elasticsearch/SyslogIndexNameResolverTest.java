@@ -0,0 +1,53 @@
+package org.xbib.elasticsearch;
+
+import org.elasticsearch.syslog.SyslogIndexNameResolver;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class SyslogIndexNameResolverTest {
+
+    @Test
+    public void testDaily() {
+        SyslogIndexNameResolver resolver = new SyslogIndexNameResolver("'syslog-'YYYY.MM.dd", DateTimeZone.UTC);
+        long midnight = new DateTime(2016, 3, 1, 0, 0, DateTimeZone.UTC).getMillis();
+        assertEquals("syslog-2016.02.29", resolver.resolve(midnight - 1));
+        assertEquals("syslog-2016.02.29", resolver.resolve(midnight - 3600000L));
+        assertEquals("syslog-2016.03.01", resolver.resolve(midnight));
+        assertEquals("syslog-2016.03.01", resolver.resolve(midnight + 86399999L));
+        assertEquals("syslog-2016.03.02", resolver.resolve(midnight + 86400000L));
+        // clock set back
+        assertEquals("syslog-2016.02.29", resolver.resolve(midnight - 1));
+    }
+
+    @Test
+    public void testHourly() {
+        SyslogIndexNameResolver resolver = new SyslogIndexNameResolver("'syslog-'YYYY.MM.dd.HH",
+                DateTimeZone.forID("Europe/Berlin"));
+        long hour = new DateTime(2016, 3, 27, 1, 0, DateTimeZone.forID("Europe/Berlin")).getMillis();
+        assertEquals("syslog-2016.03.27.00", resolver.resolve(hour - 1));
+        assertEquals("syslog-2016.03.27.01", resolver.resolve(hour));
+        // daylight saving time starts, 02:00 becomes 03:00
+        assertEquals("syslog-2016.03.27.03", resolver.resolve(hour + 3600000L));
+    }
+
+    @Test
+    public void testWeeksAndMonths() {
+        SyslogIndexNameResolver resolver = new SyslogIndexNameResolver("'syslog-'YYYY.MM-ww", DateTimeZone.UTC);
+        // a month starting in the middle of a week
+        long month = new DateTime(2016, 6, 1, 0, 0, DateTimeZone.UTC).getMillis();
+        assertEquals("syslog-2016.05-22", resolver.resolve(month - 1));
+        assertEquals("syslog-2016.06-22", resolver.resolve(month));
+    }
+
+    @Test
+    public void testConstant() {
+        SyslogIndexNameResolver resolver = new SyslogIndexNameResolver("syslog");
+        assertFalse(resolver.isTimeWindow());
+        assertEquals("syslog", resolver.resolve(0L));
+        assertEquals("syslog", resolver.resolve());
+    }
+}
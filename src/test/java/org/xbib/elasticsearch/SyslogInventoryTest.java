@@ -0,0 +1,76 @@
+package org.xbib.elasticsearch;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.syslog.SyslogInventory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SyslogInventoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCsv() throws Exception {
+        Path path = folder.newFile("inventory.csv").toPath();
+        Files.write(path, Arrays.asList(
+                "# inventory",
+                "ip,site,role,owner",
+                "10.0.0.1,fra1,db,ops",
+                "10.0.0.2,fra1,,web",
+                "2001:db8::1,ams2,lb,net"), StandardCharsets.UTF_8);
+        SyslogInventory inventory = SyslogInventory.load(path, "inventory");
+        assertEquals(3, inventory.size());
+        assertArrayEquals(new String[] { "site", "role", "owner" }, inventory.getAttributes());
+        assertArrayEquals(new String[] { "fra1", "db", "ops" }, inventory.get(InetAddress.getByName("10.0.0.1")));
+        assertArrayEquals(new String[] { "fra1", null, "web" }, inventory.get(new InetSocketAddress("10.0.0.2", 514)));
+        assertArrayEquals(new String[] { "ams2", "lb", "net" }, inventory.get(InetAddress.getByName("2001:db8:0::1")));
+        assertNull(inventory.get(InetAddress.getByName("10.0.0.3")));
+        assertNull(inventory.get(InetAddress.getByName("2001:db8::2")));
+        XContentBuilder builder = jsonBuilder().startObject();
+        inventory.write(new InetSocketAddress("10.0.0.2", 514), builder);
+        inventory.write(new InetSocketAddress("10.0.0.3", 514), builder);
+        assertEquals("{\"inventory\":{\"site\":\"fra1\",\"owner\":\"web\"}}", builder.endObject().string());
+        assertEquals(1, inventory.getMatched());
+    }
+
+    @Test
+    public void testYaml() throws Exception {
+        Path path = folder.newFile("inventory.yml").toPath();
+        Files.write(path, Arrays.asList(
+                "\"192.168.1.7\":",
+                "  site: ber1",
+                "  role: router",
+                "\"::1\":",
+                "  owner: me"), StandardCharsets.UTF_8);
+        SyslogInventory inventory = SyslogInventory.load(path, "host_info");
+        assertArrayEquals(new String[] { "site", "role", "owner" }, inventory.getAttributes());
+        assertArrayEquals(new String[] { "ber1", "router", null }, inventory.get(InetAddress.getByName("192.168.1.7")));
+        XContentBuilder builder = jsonBuilder().startObject();
+        inventory.write(new InetSocketAddress("::1", 514), builder);
+        Map<String, Object> map = XContentHelper.convertToMap(builder.endObject().bytes(), false).v2();
+        assertEquals("me", ((Map<?, ?>) map.get("host_info")).get("owner"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHostName() throws Exception {
+        Path path = folder.newFile("inventory.csv").toPath();
+        Files.write(path, Arrays.asList("ip,site", "localhost,here"), StandardCharsets.UTF_8);
+        SyslogInventory.load(path, "inventory");
+    }
+}
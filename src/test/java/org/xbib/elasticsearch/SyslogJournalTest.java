@@ -0,0 +1,125 @@
+package org.xbib.elasticsearch;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.syslog.SyslogJournal;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SyslogJournalTest {
+
+    private Path path;
+
+    @Before
+    public void createPath() throws IOException {
+        path = Files.createTempDirectory("journal");
+    }
+
+    @After
+    public void deletePath() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+            for (Path file : stream) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(path);
+    }
+
+    @Test
+    public void testAppendAndRead() throws IOException {
+        try (SyslogJournal journal = new SyslogJournal(path, 1024, 4096, false)) {
+            for (int i = 0; i < 50; i++) {
+                assertTrue(journal.append("syslog", "syslog", i % 2 == 0 ? "id" + i : null, source(i)));
+            }
+            assertTrue(journal.getSegments() > 1);
+            assertEquals(50, journal.getBacklog());
+            for (int i = 0; i < 50; i++) {
+                SyslogJournal.Record record = journal.read();
+                assertEquals("syslog", record.getIndex());
+                assertEquals("syslog", record.getType());
+                assertEquals(i % 2 == 0 ? "id" + i : null, record.getId());
+                assertEquals(new String(source(i).toBytes(), StandardCharsets.UTF_8),
+                        new String(record.getSource(), StandardCharsets.UTF_8));
+            }
+            assertNull(journal.read());
+            assertFalse(journal.hasBacklog());
+            // completely read segments are deleted
+            assertEquals(1, journal.getSegments());
+        }
+    }
+
+    @Test
+    public void testFull() throws IOException {
+        try (SyslogJournal journal = new SyslogJournal(path, 1024, 2048, false)) {
+            int n = 0;
+            while (journal.append("syslog", "syslog", source(n))) {
+                n++;
+            }
+            assertTrue(journal.isFull());
+            while (journal.read() != null) {
+                n--;
+            }
+            assertEquals(0, n);
+            assertFalse(journal.isFull());
+            assertTrue(journal.append("syslog", "syslog", source(0)));
+        }
+    }
+
+    @Test
+    public void testRecordLargerThanSegment() throws IOException {
+        try (SyslogJournal journal = new SyslogJournal(path, 1024, 2048, false)) {
+            try {
+                journal.append("syslog", "syslog", new BytesArray(new byte[1024]));
+                fail();
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            assertFalse(journal.isFull());
+            assertEquals(0, journal.getBacklog());
+            assertTrue(journal.append("syslog", "syslog", source(0)));
+        }
+    }
+
+    @Test
+    public void testRecover() throws IOException {
+        try (SyslogJournal journal = new SyslogJournal(path, 1024, 8192, false)) {
+            for (int i = 0; i < 40; i++) {
+                journal.append("syslog", "syslog", source(i));
+            }
+            for (int i = 0; i < 25; i++) {
+                journal.read();
+            }
+        }
+        try (SyslogJournal journal = new SyslogJournal(path, 1024, 8192, false)) {
+            assertEquals(15, journal.getBacklog());
+            assertEquals(new String(source(25).toBytes(), StandardCharsets.UTF_8),
+                    new String(journal.read().getSource(), StandardCharsets.UTF_8));
+            journal.append("syslog", "syslog", source(40));
+            int n = 1;
+            while (journal.read() != null) {
+                n++;
+            }
+            assertEquals(16, n);
+        }
+        try (SyslogJournal journal = new SyslogJournal(path, 1024, 8192, false)) {
+            assertFalse(journal.hasBacklog());
+            assertNull(journal.read());
+        }
+    }
+
+    private static BytesArray source(int i) {
+        return new BytesArray("{\"message\":\"message number " + i + "\"}");
+    }
+}
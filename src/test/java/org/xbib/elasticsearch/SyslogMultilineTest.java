@@ -0,0 +1,145 @@
+package org.xbib.elasticsearch;
+
+import org.elasticsearch.syslog.SyslogMultiline;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SyslogMultilineTest {
+
+    private final static SocketAddress SENDER = new InetSocketAddress("127.0.0.1", 40000);
+
+    private final static SocketAddress OTHER_SENDER = new InetSocketAddress("127.0.0.2", 40000);
+
+    private final List<String> events = new ArrayList<>();
+
+    private final SyslogMultiline.Listener listener = new SyslogMultiline.Listener() {
+        @Override
+        public void event(Object context, ChannelBuffer event, int lines) {
+            events.add(context + ":" + lines + ":" + event.toString(StandardCharsets.UTF_8));
+        }
+    };
+
+    @Test
+    public void testJoin() {
+        SyslogMultiline multiline = new SyslogMultiline(null, Pattern.compile("\\s+at |Caused by: "), 1000L, 500, 65536, 16);
+        assertTrue(multiline.offer(SENDER, buffer("<11>Oct 16 10:00:00 host app[1]: java.lang.IllegalStateException: boom"),
+                "a", 0L, listener));
+        assertTrue(multiline.offer(SENDER, buffer("<11>Oct 16 10:00:00 host app[1]: \tat Foo.bar(Foo.java:1)"),
+                "b", 10L, listener));
+        assertTrue(multiline.offer(SENDER, buffer("<11>Oct 16 10:00:00 host app[1]: Caused by: java.io.IOException"),
+                "c", 20L, listener));
+        assertTrue(events.isEmpty());
+        // a new event flushes the open one
+        assertTrue(multiline.offer(SENDER, buffer("<14>Oct 16 10:00:01 host app[1]: started"), "d", 30L, listener));
+        assertEquals(1, events.size());
+        assertEquals("a:3:<11>Oct 16 10:00:00 host app[1]: java.lang.IllegalStateException: boom\n" +
+                "\tat Foo.bar(Foo.java:1)\nCaused by: java.io.IOException", events.get(0));
+        assertEquals(1, multiline.size());
+    }
+
+    @Test
+    public void testContinuationWithoutEvent() {
+        SyslogMultiline multiline = new SyslogMultiline(null, Pattern.compile("\\s+at "), 1000L, 500, 65536, 16);
+        assertFalse(multiline.offer(SENDER, buffer("<11>Oct 16 10:00:00 host app[1]: \tat Foo.bar(Foo.java:1)"),
+                "a", 0L, listener));
+        assertEquals(0, multiline.size());
+    }
+
+    @Test
+    public void testStartPattern() {
+        SyslogMultiline multiline = new SyslogMultiline(Pattern.compile("\\d{4}-\\d{2}-\\d{2} "), null, 1000L, 500, 65536, 16);
+        assertTrue(multiline.offer(SENDER, buffer("<11>1 2016-10-16T10:00:00Z host app 1 - [a@1 k=\"v] w\"] 2016-10-16 ERROR boom"),
+                "a", 0L, listener));
+        assertTrue(multiline.offer(SENDER, buffer("<11>1 2016-10-16T10:00:00Z host app 1 - - detail"), "b", 10L, listener));
+        assertTrue(multiline.offer(SENDER, buffer("<11>1 2016-10-16T10:00:00Z host app 1 - - 2016-10-16 INFO ok"),
+                "c", 20L, listener));
+        assertEquals(1, events.size());
+        assertEquals("a:2:<11>1 2016-10-16T10:00:00Z host app 1 - [a@1 k=\"v] w\"] 2016-10-16 ERROR boom\ndetail",
+                events.get(0));
+    }
+
+    @Test
+    public void testTimeout() {
+        SyslogMultiline multiline = new SyslogMultiline(null, Pattern.compile("\\s"), 1000L, 500, 65536, 16);
+        multiline.offer(SENDER, buffer("<11>Oct 16 10:00:00 host app: first"), "a", 0L, listener);
+        multiline.offer(SENDER, buffer("<11>Oct 16 10:00:00 host app:  second"), "b", 500L, listener);
+        multiline.expire(1400L, listener);
+        assertTrue(events.isEmpty());
+        // flushed on the first tick after the timeout
+        multiline.expire(1600L, listener);
+        assertEquals(1, events.size());
+        assertEquals("a:2:<11>Oct 16 10:00:00 host app: first\n second", events.get(0));
+        assertEquals(0, multiline.size());
+        // a long pause
+        multiline.offer(SENDER, buffer("<11>Oct 16 10:00:00 host app: third"), "c", 2000L, listener);
+        multiline.expire(100000L, listener);
+        assertEquals(2, events.size());
+        assertEquals("c:1:<11>Oct 16 10:00:00 host app: third", events.get(1));
+    }
+
+    @Test
+    public void testMaxLines() {
+        SyslogMultiline multiline = new SyslogMultiline(null, Pattern.compile("\\s"), 1000L, 3, 65536, 16);
+        multiline.offer(SENDER, buffer("<11>Oct 16 10:00:00 host app: first"), "a", 0L, listener);
+        multiline.offer(SENDER, buffer("<11>Oct 16 10:00:00 host app:  second"), "b", 0L, listener);
+        multiline.offer(SENDER, buffer("<11>Oct 16 10:00:00 host app:  third"), "c", 0L, listener);
+        assertEquals(1, events.size());
+        assertEquals("a:3:<11>Oct 16 10:00:00 host app: first\n second\n third", events.get(0));
+        // the next continuation line has no event to join
+        assertFalse(multiline.offer(SENDER, buffer("<11>Oct 16 10:00:00 host app:  fourth"), "d", 0L, listener));
+    }
+
+    @Test
+    public void testMaxBytes() {
+        SyslogMultiline multiline = new SyslogMultiline(null, Pattern.compile("\\s"), 1000L, 500, 40, 16);
+        multiline.offer(SENDER, buffer("<11>Oct 16 10:00:00 host app: first"), "a", 0L, listener);
+        assertTrue(events.isEmpty());
+        multiline.offer(SENDER, buffer("<11>Oct 16 10:00:00 host app:  second"), "b", 0L, listener);
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    public void testStreams() {
+        SyslogMultiline multiline = new SyslogMultiline(null, Pattern.compile("\\s"), 1000L, 500, 65536, 16);
+        multiline.offer(SENDER, buffer("<11>Oct 16 10:00:00 host app: a1"), "a", 0L, listener);
+        multiline.offer(SENDER, buffer("<11>Oct 16 10:00:00 host other: b1"), "b", 0L, listener);
+        multiline.offer(SENDER, buffer("<11>Oct 16 10:00:00 otherhost app: c1"), "c", 0L, listener);
+        multiline.offer(OTHER_SENDER, buffer("<11>Oct 16 10:00:00 host app: d1"), "d", 0L, listener);
+        multiline.offer(SENDER, buffer("<11>Oct 16 10:00:00 host other:  b2"), "x", 0L, listener);
+        multiline.offer(OTHER_SENDER, buffer("<11>Oct 16 10:00:00 host app:  d2"), "x", 0L, listener);
+        multiline.offer(SENDER, buffer("<11>Oct 16 10:00:00 host app:  a2"), "x", 0L, listener);
+        assertEquals(4, multiline.size());
+        multiline.expire(Long.MAX_VALUE, listener);
+        assertEquals(4, events.size());
+        assertTrue(events.contains("a:2:<11>Oct 16 10:00:00 host app: a1\n a2"));
+        assertTrue(events.contains("b:2:<11>Oct 16 10:00:00 host other: b1\n b2"));
+        assertTrue(events.contains("c:1:<11>Oct 16 10:00:00 otherhost app: c1"));
+        assertTrue(events.contains("d:2:<11>Oct 16 10:00:00 host app: d1\n d2"));
+        assertEquals(0, multiline.size());
+    }
+
+    @Test
+    public void testMaxStreams() {
+        SyslogMultiline multiline = new SyslogMultiline(null, Pattern.compile("\\s"), 1000L, 500, 65536, 1);
+        assertTrue(multiline.offer(SENDER, buffer("<11>Oct 16 10:00:00 host app: a1"), "a", 0L, listener));
+        assertFalse(multiline.offer(SENDER, buffer("<11>Oct 16 10:00:00 host other: b1"), "b", 0L, listener));
+        assertEquals(1, multiline.size());
+        assertTrue(events.isEmpty());
+    }
+
+    private static ChannelBuffer buffer(String message) {
+        return ChannelBuffers.wrappedBuffer(message.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,77 @@
+package org.xbib.elasticsearch;
+
+import org.elasticsearch.common.syslog.Facility;
+import org.elasticsearch.common.syslog.Severity;
+import org.elasticsearch.syslog.SyslogRateLimiter;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SyslogRateLimiterTest {
+
+    private final static long SECOND = 1000000000L;
+
+    private final InetSocketAddress remote = new InetSocketAddress("127.0.0.1", 1234);
+
+    @Test
+    public void testRate() {
+        SyslogRateLimiter.Rule rule = new SyslogRateLimiter.Rule("debug", SyslogRateLimiter.Key.HOST,
+                Collections.<Facility>emptyList(), Collections.singletonList(Severity.DEBUG),
+                Collections.<String>emptyList(), 10.0d, 5, 1.0d, 16);
+        SyslogRateLimiter limiter = new SyslogRateLimiter(Collections.singletonList(rule));
+        ChannelBuffer debug = buffer("<15>Oct 16 10:00:00 hosta app: debug");
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.acquire(remote, debug, SECOND));
+        }
+        assertFalse(limiter.acquire(remote, debug, SECOND));
+        // other hosts and severities have their own budget
+        assertTrue(limiter.acquire(remote, buffer("<15>Oct 16 10:00:00 hostb app: debug"), SECOND));
+        assertTrue(limiter.acquire(remote, buffer("<14>Oct 16 10:00:00 hosta app: info"), SECOND));
+        // one message per 100 ms
+        assertTrue(limiter.acquire(remote, debug, SECOND + SECOND / 10));
+        assertFalse(limiter.acquire(remote, debug, SECOND + SECOND / 10));
+        assertEquals(2, rule.getLimited());
+        // refilled
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.acquire(remote, debug, 3 * SECOND));
+        }
+    }
+
+    @Test
+    public void testSample() {
+        SyslogRateLimiter.Rule rule = new SyslogRateLimiter.Rule("sample", SyslogRateLimiter.Key.NONE,
+                Collections.singletonList(Facility.LOCAL7), Collections.<Severity>emptyList(),
+                Collections.<String>emptyList(), 0.0d, 1, 0.0d, 16);
+        SyslogRateLimiter limiter = new SyslogRateLimiter(Collections.singletonList(rule));
+        assertFalse(limiter.acquire(remote, buffer("<190>1 2016-10-16T10:00:00Z hosta app - - - local7"), 0L));
+        assertTrue(limiter.acquire(remote, buffer("<14>1 2016-10-16T10:00:00Z hosta app - - - user"), 0L));
+        assertTrue(limiter.acquire(remote, buffer("no priority"), 0L));
+        assertEquals(1, rule.getSampledOut());
+    }
+
+    @Test
+    public void testHosts() {
+        SyslogRateLimiter.Rule rule = new SyslogRateLimiter.Rule("noisy", SyslogRateLimiter.Key.REMOTE,
+                Collections.<Facility>emptyList(), Collections.<Severity>emptyList(),
+                Arrays.asList("noisy", "chatty"), 1.0d, 1, 1.0d, 16);
+        SyslogRateLimiter limiter = new SyslogRateLimiter(Collections.singletonList(rule));
+        assertTrue(limiter.acquire(remote, buffer("<13>1 2016-10-16T10:00:00Z noisy app - - - one"), 0L));
+        assertFalse(limiter.acquire(remote, buffer("<13>1 2016-10-16T10:00:00Z chatty app - - - two"), 0L));
+        assertTrue(limiter.acquire(remote, buffer("<13>1 2016-10-16T10:00:00Z quiet app - - - three"), 0L));
+        assertTrue(limiter.acquire(new InetSocketAddress("127.0.0.2", 1234),
+                buffer("<13>1 2016-10-16T10:00:00Z noisy app - - - four"), 0L));
+    }
+
+    private static ChannelBuffer buffer(String message) {
+        return ChannelBuffers.wrappedBuffer(message.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,97 @@
+package org.xbib.elasticsearch;
+
+import org.elasticsearch.syslog.SyslogResolver;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SyslogResolverTest {
+
+    @Test
+    public void testCache() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        SyslogResolver resolver = new TestResolver(executor, 1000L, 100L, 16);
+        InetAddress known = InetAddress.getByName("10.0.0.1");
+        InetAddress unknown = InetAddress.getByName("10.0.0.2");
+        // misses never wait, and a pending lookup is not submitted again
+        assertNull(resolver.get(known, 0L));
+        assertNull(resolver.get(known, 1L));
+        assertNull(resolver.get(unknown, 1L));
+        assertEquals(2, executor.tasks.size());
+        executor.runAll();
+        long now = System.currentTimeMillis();
+        assertEquals("host1.example.com", resolver.get(known, now));
+        assertNull(resolver.get(unknown, now));
+        assertEquals(3, resolver.getHits());
+        assertEquals(1, resolver.getResolved());
+        assertEquals(1, resolver.getFailures());
+        // an expired host name is served until the lookup is done again
+        assertEquals("host1.example.com", resolver.get(known, now + 2000L));
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+        assertEquals(2, resolver.getResolved());
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        SyslogResolver resolver = new TestResolver(executor, 1000L, 100L, 4);
+        for (int i = 0; i < 4; i++) {
+            resolver.get(InetAddress.getByName("10.0.1." + i), 0L);
+        }
+        executor.runAll();
+        assertEquals(4, resolver.size());
+        // a full cache takes no new address, but sweeps
+        long now = System.currentTimeMillis();
+        assertNull(resolver.get(InetAddress.getByName("10.0.0.1"), now));
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+        assertEquals(3, resolver.size());
+        executor.rejecting = true;
+        assertNull(resolver.get(InetAddress.getByName("10.0.0.1"), now));
+        assertEquals(1, resolver.getRejected());
+        assertEquals(3, resolver.size());
+    }
+
+    private static class TestResolver extends SyslogResolver {
+
+        TestResolver(Executor executor, long ttlMillis, long failureTtlMillis, int maxSize) {
+            super(executor, ttlMillis, failureTtlMillis, maxSize);
+        }
+
+        @Override
+        protected String resolve(InetAddress address) {
+            return address.getAddress()[3] == 2 ? null : "host" + address.getAddress()[3] + ".example.com";
+        }
+    }
+
+    private static class ManualExecutor implements Executor {
+
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        private boolean rejecting;
+
+        @Override
+        public void execute(Runnable command) {
+            if (rejecting) {
+                throw new RejectedExecutionException();
+            }
+            tasks.add(command);
+        }
+
+        void runAll() {
+            List<Runnable> run = new ArrayList<>(tasks);
+            tasks.clear();
+            for (Runnable task : run) {
+                task.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.xbib.elasticsearch;
+
+import org.elasticsearch.syslog.SyslogFrame;
+import org.elasticsearch.syslog.SyslogRingBuffer;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SyslogRingBufferTest {
+
+    private final static SocketAddress REMOTE = new InetSocketAddress("127.0.0.1", 40000);
+
+    @Test
+    public void testFull() {
+        SyslogRingBuffer ringBuffer = new SyslogRingBuffer(4);
+        assertEquals(4, ringBuffer.capacity());
+        assertNull(ringBuffer.peek());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ringBuffer.offer(null, "udp", null, REMOTE, buffer(0, i)));
+        }
+        assertFalse(ringBuffer.offer(null, "udp", null, REMOTE, buffer(0, 4)));
+        assertEquals(4, ringBuffer.size());
+        SyslogFrame frame = ringBuffer.peek();
+        assertEquals(0, frame.getBuffer().getInt(4));
+        assertSame(REMOTE, frame.getRemoteAddress());
+        ringBuffer.release();
+        // the released slot is free again
+        assertTrue(ringBuffer.offer(null, "udp", null, REMOTE, buffer(0, 4)));
+        assertFalse(ringBuffer.offer(null, "udp", null, REMOTE, buffer(0, 5)));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(i, ringBuffer.peek().getBuffer().getInt(4));
+            ringBuffer.release();
+        }
+        assertNull(ringBuffer.peek());
+        assertEquals(0, ringBuffer.size());
+    }
+
+    @Test
+    public void testMultipleProducers() throws InterruptedException {
+        final int producers = 4;
+        final int frames = 50000;
+        final SyslogRingBuffer ringBuffer = new SyslogRingBuffer(64);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < frames; i++) {
+                        while (!ringBuffer.offer(null, "udp", null, REMOTE, buffer(producer, i))) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        int[] next = new int[producers];
+        int received = 0;
+        long deadline = System.currentTimeMillis() + 30000L;
+        while (received < producers * frames && System.currentTimeMillis() < deadline) {
+            SyslogFrame frame = ringBuffer.peek();
+            if (frame == null) {
+                Thread.yield();
+                continue;
+            }
+            int producer = frame.getBuffer().getInt(0);
+            int sequence = frame.getBuffer().getInt(4);
+            // no frame lost, duplicated or reordered within a producer
+            assertEquals(next[producer], sequence);
+            next[producer]++;
+            received++;
+            ringBuffer.release();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(producers * frames, received);
+        assertNull(ringBuffer.peek());
+    }
+
+    private static ChannelBuffer buffer(int producer, int sequence) {
+        ChannelBuffer buffer = ChannelBuffers.buffer(8);
+        buffer.writeInt(producer);
+        buffer.writeInt(sequence);
+        return buffer;
+    }
+}
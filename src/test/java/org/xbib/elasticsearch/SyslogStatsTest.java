@@ -0,0 +1,156 @@
+package org.xbib.elasticsearch;
+
+import org.elasticsearch.common.syslog.Severity;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.elasticsearch.syslog.SyslogBackpressure;
+import org.elasticsearch.syslog.SyslogStats;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SyslogStatsTest {
+
+    @Test
+    public void testListenerCounters() throws IOException {
+        SyslogStats stats = new SyslogStats(new SyslogBackpressure(1000L, 500L, 100L, 50L, Severity.INFORMATIONAL));
+        SyslogStats.ListenerStats udp = stats.listener("udp");
+        udp.received(100);
+        udp.received(50);
+        udp.parseFailure();
+        udp.jsonPayload();
+        udp.patternMatch("host");
+        udp.dropped();
+        udp.filtered();
+        udp.rateLimited();
+        udp.repeated();
+        udp.repeatSummary();
+        udp.multilineEvent(3);
+        SyslogStats.ListenerStats tcp = stats.listener("named.tcp");
+        tcp.received(10);
+        assertTrue(tcp == stats.listener("named.tcp"));
+
+        Map<String, Object> map = render(stats);
+        Map<String, Object> listeners = map(map, "listeners");
+        assertEquals(2, listeners.size());
+        Map<String, Object> udpMap = map(listeners, "udp");
+        assertEquals(2, number(udpMap, "received"));
+        assertEquals(150, number(udpMap, "bytes"));
+        assertEquals(1, number(udpMap, "parse_failures"));
+        assertEquals(1, number(udpMap, "json_payloads"));
+        assertEquals(1, number(udpMap, "pattern_hits"));
+        assertEquals(1, number(udpMap, "dropped"));
+        assertEquals(1, number(udpMap, "filtered"));
+        assertEquals(1, number(udpMap, "rate_limited"));
+        assertEquals(1, number(udpMap, "repeats"));
+        assertEquals(1, number(udpMap, "repeat_summaries"));
+        assertEquals(1, number(udpMap, "multiline_events"));
+        assertEquals(2, number(udpMap, "joined_lines"));
+        Map<String, Object> tcpMap = map(listeners, "named.tcp");
+        assertEquals(1, number(tcpMap, "received"));
+        assertEquals(10, number(tcpMap, "bytes"));
+        assertEquals(0, number(tcpMap, "parse_failures"));
+        Map<String, Object> total = map(map, "total");
+        assertEquals(3, number(total, "received"));
+        assertEquals(160, number(total, "bytes"));
+        assertEquals(0, number(map(total, "shed"), "total"));
+    }
+
+    @Test
+    public void testLatencies() throws IOException {
+        SyslogStats stats = new SyslogStats(new SyslogBackpressure(1000L, 500L, 100L, 50L, Severity.INFORMATIONAL));
+        SyslogStats.ListenerStats udp = stats.listener("udp");
+        SyslogStats.ListenerStats tcp = stats.listener("tcp");
+        for (int i = 1; i <= 100; i++) {
+            udp.queueWait(i * 1000L);
+        }
+        tcp.queueWait(1000000L);
+        udp.parseTime(-1L);
+        Map<String, Object> map = render(stats);
+        Map<String, Object> queueWait = map(map(map(map, "listeners"), "udp"), "queue_wait");
+        assertEquals(100, number(queueWait, "count"));
+        assertEquals(100, number(queueWait, "max_micros"));
+        assertEquals(50, number(queueWait, "p50_micros"));
+        assertEquals(99, number(queueWait, "p99_micros"));
+        assertEquals(50.5d, ((Number) queueWait.get("mean_micros")).doubleValue(), 0.5d);
+        // negative durations of a clock going back are recorded as zero
+        Map<String, Object> parseTime = map(map(map(map, "listeners"), "udp"), "parse_time");
+        assertEquals(1, number(parseTime, "count"));
+        assertEquals(0, number(parseTime, "max_micros"));
+        Map<String, Object> totalQueueWait = map(map(map, "total"), "queue_wait");
+        assertEquals(101, number(totalQueueWait, "count"));
+        assertEquals(1000, number(totalQueueWait, "max_micros"), 1000 / 100);
+        // rendering again must not count the recorded values twice
+        map = render(stats);
+        assertEquals(100, number(map(map(map(map, "listeners"), "udp"), "queue_wait"), "count"));
+        assertEquals(101, number(map(map(map, "total"), "queue_wait"), "count"));
+        udp.queueWait(1000L);
+        map = render(stats);
+        assertEquals(101, number(map(map(map(map, "listeners"), "udp"), "queue_wait"), "count"));
+    }
+
+    @Test
+    public void testBulk() throws IOException {
+        SyslogBackpressure backpressure = new SyslogBackpressure(1000L, 500L, 100L, 50L, Severity.INFORMATIONAL);
+        SyslogStats stats = new SyslogStats(backpressure);
+        Map<String, Object> map = render(stats);
+        Map<String, Object> bulk = map(map, "bulk");
+        assertEquals(0, number(bulk, "requests"));
+        assertEquals(0, number(map(bulk, "permit_wait"), "count"));
+        assertEquals(0, number(map(bulk, "round_trip"), "count"));
+        assertEquals(0, number(map(bulk, "round_trip"), "mean_micros"));
+        assertFalse(map.containsKey("journal"));
+
+        backpressure.added(2000L);
+        stats.bulkPermitWait(5000000L);
+        stats.bulk(10, 2, 20000000L);
+        stats.bulk(5, 0, 10000000L);
+        stats.bulkRetries(1);
+        stats.deadLetter();
+        backpressure.drop(Severity.DEBUG.numericalCode());
+        map = render(stats);
+        bulk = map(map, "bulk");
+        assertEquals(2, number(bulk, "requests"));
+        assertEquals(15, number(bulk, "actions"));
+        assertEquals(2, number(bulk, "failures"));
+        assertEquals(1, number(bulk, "retries"));
+        assertEquals(1, number(bulk, "dead_letters"));
+        assertEquals(2000, number(bulk, "in_flight_bytes"));
+        assertEquals(1, number(bulk, "in_flight_actions"));
+        assertEquals(Boolean.TRUE, bulk.get("backpressure"));
+        assertEquals(1, number(bulk, "backpressure_pauses"));
+        assertEquals(1, number(map(bulk, "permit_wait"), "count"));
+        assertEquals(5000, number(map(bulk, "permit_wait"), "max_micros"), 5000 / 100);
+        assertEquals(2, number(map(bulk, "round_trip"), "count"));
+        assertEquals(20000, number(map(bulk, "round_trip"), "max_micros"), 20000 / 100);
+        Map<String, Object> shed = map(map(map, "total"), "shed");
+        assertEquals(1, number(shed, "total"));
+        assertEquals(1, number(shed, Severity.DEBUG.label()));
+    }
+
+    static Map<String, Object> render(SyslogStats stats) throws IOException {
+        XContentBuilder builder = jsonBuilder();
+        builder.startObject();
+        stats.toXContent(builder, ToXContent.EMPTY_PARAMS);
+        builder.endObject();
+        return JsonXContent.jsonXContent.createParser(builder.string()).map();
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> map(Map<String, Object> map, String key) {
+        assertTrue(key + " in " + map.keySet(), map.containsKey(key));
+        return (Map<String, Object>) map.get(key);
+    }
+
+    static long number(Map<String, Object> map, String key) {
+        assertTrue(key + " in " + map.keySet(), map.containsKey(key));
+        return ((Number) map.get(key)).longValue();
+    }
+}
@@ -0,0 +1,131 @@
+package org.xbib.elasticsearch;
+
+import org.elasticsearch.syslog.SyslogFrame;
+import org.elasticsearch.syslog.SyslogWorkers;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SyslogWorkersTest {
+
+    private final static Executor THREADS = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            new Thread(runnable).start();
+        }
+    };
+
+    @Test
+    public void testOfferFull() {
+        SyslogWorkers workers = new SyslogWorkers(Collections.singletonList(new RecordingProcessor()), 2);
+        SocketAddress remote = new InetSocketAddress("127.0.0.1", 40000);
+        assertTrue(workers.offer(null, "udp", null, remote, buffer(0, 0)));
+        assertTrue(workers.offer(null, "udp", null, remote, buffer(0, 1)));
+        assertFalse(workers.offer(null, "udp", null, remote, buffer(0, 2)));
+        assertEquals(2, workers.queued());
+    }
+
+    @Test
+    public void testPartitionAndOrder() throws InterruptedException {
+        final int remotes = 32;
+        final int producers = 4;
+        final int frames = 5000;
+        final SocketAddress[] addresses = new SocketAddress[remotes];
+        for (int i = 0; i < remotes; i++) {
+            // a sender may use several ports
+            addresses[i] = new InetSocketAddress("10.0.0." + (i + 1), 40000 + i % 3);
+        }
+        List<RecordingProcessor> processors = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            processors.add(new RecordingProcessor());
+        }
+        final SyslogWorkers workers = new SyslogWorkers(processors, 64);
+        workers.start(THREADS);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    // each producer sends for its own senders, in sequence per sender
+                    for (int i = 0; i < frames; i++) {
+                        int remote = producer + producers * (i % (remotes / producers));
+                        int sequence = i / (remotes / producers);
+                        assertTrue(workers.put(null, "tcp", null, addresses[remote], buffer(remote, sequence)));
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        workers.close(30000L);
+        int processed = 0;
+        Set<Integer> seen = new HashSet<>();
+        for (RecordingProcessor processor : processors) {
+            assertTrue(processor.closed);
+            assertTrue(processor.errors.toString(), processor.errors.isEmpty());
+            for (Map.Entry<Integer, Integer> entry : processor.next.entrySet()) {
+                // each sender is processed by one worker only
+                assertTrue(seen.add(entry.getKey()));
+                processed += entry.getValue();
+            }
+        }
+        assertEquals(remotes, seen.size());
+        assertEquals(producers * frames, processed);
+        assertEquals(0, workers.queued());
+    }
+
+    private static ChannelBuffer buffer(int remote, int sequence) {
+        ChannelBuffer buffer = ChannelBuffers.buffer(8);
+        buffer.writeInt(remote);
+        buffer.writeInt(sequence);
+        return buffer;
+    }
+
+    private static class RecordingProcessor implements SyslogWorkers.Processor {
+
+        private final Map<Integer, Integer> next = new HashMap<>();
+
+        private final List<String> errors = new ArrayList<>();
+
+        private volatile boolean closed;
+
+        @Override
+        public void process(SyslogFrame frame) {
+            int remote = frame.getBuffer().getInt(0);
+            int sequence = frame.getBuffer().getInt(4);
+            Integer expected = next.get(remote);
+            if (sequence != (expected != null ? expected : 0)) {
+                errors.add("sender " + remote + ": expected " + expected + " but got " + sequence);
+            }
+            next.put(remote, sequence + 1);
+        }
+
+        @Override
+        public void idle() {
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.xbib.elasticsearch;
+
+import org.elasticsearch.common.joda.Joda;
+import org.elasticsearch.common.syslog.TimestampParser;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TimestampParserTest {
+
+    @Test
+    public void testRFC5424() {
+        TimestampParser parser = new TimestampParser();
+        assertEquals(new DateTime(2003, 8, 24, 12, 14, 15, 0, DateTimeZone.UTC).getMillis(),
+                rfc5424(parser, "2003-08-24T05:14:15.000003-07:00"));
+        assertEquals(new DateTime(2003, 10, 11, 22, 14, 15, 3, DateTimeZone.UTC).getMillis(),
+                rfc5424(parser, "2003-10-11T22:14:15.003Z"));
+        assertEquals(new DateTime(2016, 2, 29, 8, 0, 0, 500, DateTimeZone.UTC).getMillis(),
+                rfc5424(parser, "2016-02-29T10:00:00.5+02:00"));
+        assertEquals(new DateTime(1985, 4, 12, 23, 20, 50, 520, DateTimeZone.UTC).getMillis(),
+                rfc5424(parser, "1985-04-12T23:20:50.52Z"));
+        for (String invalid : new String[]{"2003-08-24T05:14:15", "2003-08-24 05:14:15Z", "2003-13-24T05:14:15Z",
+                "2015-02-29T05:14:15Z", "2003-08-24T24:14:15Z", "2003-08-24T05:14:15.Z", "2003-08-24T05:14:15+7:00"}) {
+            try {
+                rfc5424(parser, invalid);
+                fail(invalid);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testRFC5424Random() {
+        TimestampParser parser = new TimestampParser();
+        DateTimeFormatter format = DateTimeFormat.forPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZZ");
+        Random random = new Random(0L);
+        for (int i = 0; i < 10000; i++) {
+            long millis = (random.nextLong() >>> 1) % 4102444800000L;
+            DateTimeZone zone = DateTimeZone.forOffsetMillis((random.nextInt(48) - 24) * 1800000);
+            String s = format.withZone(zone).print(millis);
+            assertEquals(s, millis, rfc5424(parser, s));
+        }
+    }
+
+    @Test
+    public void testRFC3164() {
+        TimestampParser parser = new TimestampParser();
+        int year = new DateTime(DateTimeZone.UTC).getYear();
+        int month = new DateTime(DateTimeZone.UTC).getMonthOfYear();
+        DateTimeFormatter format = DateTimeFormat.forPattern("MMM dd HH:mm:ss").withLocale(Locale.ENGLISH).withZoneUTC();
+        for (int m = 1; m <= 12; m++) {
+            int expectedYear = m - month > 6 ? year - 1 : month - m > 6 ? year + 1 : year;
+            DateTime dateTime = new DateTime(expectedYear, m, 9, 8, 7, 6, DateTimeZone.UTC);
+            String s = format.print(dateTime).replace(" 09 ", "  9 ");
+            assertEquals(s, dateTime.getMillis(), parser.parseRFC3164(s, 0));
+            assertEquals(s, dateTime.getMillis(), parser.parseRFC3164(s.getBytes(StandardCharsets.US_ASCII), 0));
+        }
+        assertEquals(0L, parser.parseRFC3164("Foo 11 22:14:15", 0));
+        assertEquals(0L, parser.parseRFC3164("Oct 11 22-14-15", 0));
+        assertEquals(0L, parser.parseRFC3164("Oct 32 22:14:15", 0));
+    }
+
+    @Test
+    public void testPrint() {
+        DateTimeFormatter format = Joda.forPattern("dateOptionalTime", Locale.ROOT).printer();
+        char[] chars = new char[TimestampParser.PRINT_LEN];
+        Random random = new Random(0L);
+        for (int i = 0; i < 10000; i++) {
+            long millis = (random.nextLong() >>> 1) % 253402300800000L;
+            TimestampParser.print(millis, chars);
+            assertEquals(format.print(millis), new String(chars));
+        }
+    }
+
+    private static long rfc5424(TimestampParser parser, String s) {
+        long millis = parser.parseRFC5424(s, 0, s.length());
+        assertEquals(millis, parser.parseRFC5424(s.getBytes(StandardCharsets.US_ASCII), 0, s.length()));
+        return millis;
+    }
+}